@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ChunkedResponseStoreTest {
+  private static final String APP_NAME = "survey.test";
+
+  @Test
+  public void testChunksDoNotSplitSurrogatePairs() {
+    int chunkChars = ChunkedResponseStore.MIN_CHUNK_CHARS;
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < chunkChars - 1; ++i) {
+      b.append('a');
+    }
+    // U+1F600 straddles the first chunk boundary
+    b.append("\uD83D\uDE00");
+    b.append("bc");
+    String json = b.toString();
+
+    ResponseQueue queue = new ResponseQueue();
+    queue.offer(APP_NAME, json);
+    ChunkedResponseStore store = new ChunkedResponseStore();
+    assertEquals("{\"streamId\":1,\"length\":" + json.length() + ",\"chunkCount\":2}",
+        store.open(APP_NAME, queue, chunkChars));
+
+    String first = store.getChunk(1, 0);
+    String second = store.getChunk(1, 1);
+    assertEquals(chunkChars - 1, first.length());
+    assertFalse(Character.isHighSurrogate(first.charAt(first.length() - 1)));
+    assertEquals("\uD83D\uDE00bc", second);
+    assertEquals(json, first + second);
+    // the last chunk released the stream
+    assertNull(store.getChunk(1, 0));
+  }
+
+  @Test
+  public void testOpenRefusesRatherThanDropping() {
+    ResponseQueue queue = new ResponseQueue();
+    ChunkedResponseStore store = new ChunkedResponseStore();
+    for (int i = 0; i <= ChunkedResponseStore.MAX_OPEN_RESPONSES; ++i) {
+      queue.offer(APP_NAME, "{\"r\":" + i + "}");
+    }
+    for (int i = 0; i < ChunkedResponseStore.MAX_OPEN_RESPONSES; ++i) {
+      store.open(APP_NAME, queue, 0);
+    }
+    assertEquals(ChunkedResponseStore.BUSY, store.open(APP_NAME, queue, 0));
+    assertFalse(queue.isEmpty());
+    assertFalse(store.takeCapacityAvailable());
+
+    // every open stream is still readable
+    assertEquals("{\"r\":0}", store.getChunk(1, 0));
+    assertTrue(store.takeCapacityAvailable());
+    assertFalse(store.takeCapacityAvailable());
+    assertTrue(store.open(APP_NAME, queue, 0).startsWith("{\"streamId\":5,"));
+    assertTrue(queue.isEmpty());
+  }
+}
@@ -14,19 +14,27 @@
 
 package org.opendatakit.survey.logic;
 
+import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
 
 
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
+import org.opendatakit.provider.FormsColumns;
 import org.opendatakit.provider.FormsProviderAPI;
 import org.opendatakit.utilities.ODKFileUtils;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class FormIdStructTest {
@@ -55,4 +63,47 @@ public class FormIdStructTest {
 	assertEquals(fis.appName, APP_NAME);
   }
 
+  @Test
+  public void testQueryFormIdStructsBatchesAndMatchesBack() {
+    final List<Integer> batchSizes = new ArrayList<Integer>();
+    FormIdStruct.FormsQuery query = new FormIdStruct.FormsQuery() {
+      @Override
+      public Cursor query(Uri uri, String selection, String[] selectionArgs) {
+        batchSizes.add(selectionArgs.length);
+        MatrixCursor c = new MatrixCursor(new String[] { FormsColumns.TABLE_ID,
+            FormsColumns.FORM_ID, FormsColumns.FORM_VERSION, FormsColumns.DATE });
+        for (String formId : selectionArgs) {
+          if (!formId.equals("missing")) {
+            // the same formId in another table must not be matched to the request
+            c.addRow(new Object[] { "otherTable", formId, "1", 0L });
+            c.addRow(new Object[] { TABLE_ID, formId, FORM_VERSION, 0L });
+          }
+        }
+        return c;
+      }
+    };
+
+    Uri appUri = Uri.withAppendedPath(FormsProviderAPI.CONTENT_URI, APP_NAME);
+    Uri tableUri = Uri.withAppendedPath(appUri, TABLE_ID);
+    int formCount = FormIdStruct.MAX_BATCH_QUERY_ARGS + 5;
+    List<Uri> formUris = new ArrayList<Uri>();
+    for (int i = 0; i < formCount; ++i) {
+      formUris.add(Uri.withAppendedPath(tableUri, "form" + i));
+    }
+    Uri missing = Uri.withAppendedPath(tableUri, "missing");
+    formUris.add(missing);
+
+    Map<Uri, FormIdStruct> resolved = FormIdStruct.queryFormIdStructs(query, APP_NAME, formUris);
+
+    assertEquals(Arrays.asList(FormIdStruct.MAX_BATCH_QUERY_ARGS, 6), batchSizes);
+    assertEquals(formCount, resolved.size());
+    assertFalse(resolved.containsKey(missing));
+    for (int i = 0; i < formCount; ++i) {
+      FormIdStruct form = resolved.get(formUris.get(i));
+      assertEquals(TABLE_ID, form.tableId);
+      assertEquals("form" + i, form.formId);
+      assertEquals(FORM_VERSION, form.formVersion);
+      assertEquals(formUris.get(i), form.formUri);
+    }
+  }
 }
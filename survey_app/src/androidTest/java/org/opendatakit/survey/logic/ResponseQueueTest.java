@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.util.Arrays;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ResponseQueueTest {
+  private static final String APP_NAME = "survey.test";
+
+  @Test
+  public void testPollBatchHonorsBudget() {
+    ResponseQueue queue = new ResponseQueue();
+    queue.offer(APP_NAME, "aaaa");
+    queue.offer(APP_NAME, "bbbb");
+    queue.offer(APP_NAME, "cccccccc");
+
+    // 8 bytes per four-character response
+    assertEquals(Arrays.asList("aaaa", "bbbb"), queue.pollBatch(20));
+    // the oldest response is returned even when it exceeds the budget
+    assertEquals(Arrays.asList("cccccccc"), queue.pollBatch(4));
+    assertTrue(queue.pollBatch(20).isEmpty());
+  }
+
+  @Test
+  public void testResponsesAreDeliveredInOrder() {
+    ResponseQueue queue = new ResponseQueue();
+    long first = queue.offer(APP_NAME, "{\"a\":1}");
+    long second = queue.offer(APP_NAME, "{\"b\":2}");
+    queue.offer(APP_NAME, "{\"c\":3}");
+
+    assertTrue(first < second);
+    assertEquals("{\"a\":1}", queue.poll());
+    assertEquals("{\"b\":2}", queue.poll());
+    assertEquals("{\"c\":3}", queue.poll());
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testSnapshotAndRestorePreserveOrder() {
+    ResponseQueue queue = new ResponseQueue();
+    queue.offer(APP_NAME, "first");
+    queue.offer(APP_NAME, "second");
+
+    ResponseQueue restored = new ResponseQueue();
+    restored.restore(queue.snapshot());
+
+    assertEquals(Arrays.asList("first", "second"), restored.snapshot());
+    assertEquals("first", restored.poll());
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import android.os.Parcel;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SectionScreenHistoryTest {
+
+  private static SectionScreenHistory buildHistory() {
+    SectionScreenHistory history = new SectionScreenHistory();
+    history.setScreen("initial/0", null);
+    history.pushScreen();
+    history.setScreen("initial/12", "a");
+    history.pushScreen();
+    history.setScreen("initial/_contents", "b");
+    // a different section starts a new entry on the section stack
+    history.setScreen("survey/007", "c");
+    history.pushScreen();
+    history.setScreen("survey", null);
+    return history;
+  }
+
+  private static void assertUnwinds(SectionScreenHistory history) {
+    assertEquals("survey", history.getScreenPath());
+    assertEquals("survey/007", history.popScreen());
+    assertEquals("c", history.getState());
+    assertEquals("initial/_contents", history.popScreen());
+    assertEquals("b", history.getState());
+    assertEquals("initial/12", history.popScreen());
+    assertEquals("initial/0", history.popScreen());
+    assertFalse(history.hasScreenHistory());
+    assertNull(history.popScreen());
+    assertTrue(history.isEmpty());
+  }
+
+  private static void assertRejected(byte[] data) {
+    try {
+      SectionScreenHistory.fromByteArray(data);
+      fail("accepted corrupt history");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testByteArrayRoundTrip() throws IOException {
+    assertUnwinds(SectionScreenHistory.fromByteArray(buildHistory().toByteArray()));
+    assertTrue(SectionScreenHistory.fromByteArray(new SectionScreenHistory().toByteArray())
+        .isEmpty());
+  }
+
+  @Test
+  public void testCorruptByteArrayIsRejected() {
+    byte[] data = buildHistory().toByteArray();
+    assertRejected(new byte[0]);
+    for (int length = 1; length < data.length; ++length) {
+      assertRejected(Arrays.copyOf(data, length));
+    }
+    // the format version
+    byte[] corrupt = data.clone();
+    corrupt[3] ^= 0x7f;
+    assertRejected(corrupt);
+    // the name count
+    corrupt = data.clone();
+    corrupt[4] = (byte) 0x80;
+    assertRejected(corrupt);
+  }
+
+  @Test
+  public void testNavigation() {
+    SectionScreenHistory history = buildHistory();
+    assertTrue(history.hasScreenHistory());
+    assertEquals("initial/_contents", history.popSection());
+    assertEquals("b", history.getState());
+    history.clear();
+    assertTrue(history.isEmpty());
+    assertNull(history.getScreenPath());
+
+    assertUnwinds(buildHistory());
+  }
+
+  @Test
+  public void testParcelRoundTrip() {
+    Parcel parcel = Parcel.obtain();
+    try {
+      buildHistory().writeToParcel(parcel, 0);
+      parcel.setDataPosition(0);
+      assertUnwinds(SectionScreenHistory.CREATOR.createFromParcel(parcel));
+    } finally {
+      parcel.recycle();
+    }
+  }
+}
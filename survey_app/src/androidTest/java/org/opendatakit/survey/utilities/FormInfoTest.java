@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.utilities;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class FormInfoTest {
+  private static final String SUBTEXT_PATTERN = "'Added on' MMM d";
+
+  private static FormInfo form(Collator collator, String tableId, String formId,
+      String formVersion, String displayName) {
+    return new FormInfo(collator, tableId, formId, formVersion, displayName, SUBTEXT_PATTERN,
+        Locale.US, 0L);
+  }
+
+  @Test
+  public void testSortByDisplayNameIgnoresCase() {
+    Collator collator = FormInfo.newSortCollator();
+    FormInfo b = form(collator, "t1", "f1", "1", "beta");
+    FormInfo a = form(collator, "t2", "f2", "1", "Alpha");
+    FormInfo c = form(collator, "t3", "f3", "1", "Gamma");
+
+    ArrayList<FormInfo> forms = new ArrayList<FormInfo>();
+    forms.add(c);
+    forms.add(b);
+    forms.add(a);
+    Collections.sort(forms, FormInfo.BY_DISPLAY_NAME);
+
+    assertSame(a, forms.get(0));
+    assertSame(b, forms.get(1));
+    assertSame(c, forms.get(2));
+  }
+
+  @Test
+  public void testSortByTableIdWithNullVersion() {
+    Collator collator = FormInfo.newSortCollator();
+    FormInfo versioned = form(collator, "myTable", "myForm", "12", "Survey");
+    FormInfo unversioned = form(collator, "myTable", "myForm", null, "Survey");
+    FormInfo other = form(collator, "aTable", "myForm", "12", "Survey");
+
+    ArrayList<FormInfo> forms = new ArrayList<FormInfo>();
+    forms.add(versioned);
+    forms.add(unversioned);
+    forms.add(other);
+    Collections.sort(forms, FormInfo.BY_TABLE_ID);
+
+    assertSame(other, forms.get(0));
+    assertSame(unversioned, forms.get(1));
+    assertSame(versioned, forms.get(2));
+    assertEquals(0, FormInfo.BY_TABLE_ID.compare(unversioned, unversioned));
+  }
+}
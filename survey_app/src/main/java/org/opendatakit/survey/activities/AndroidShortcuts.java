@@ -40,7 +40,7 @@ import org.opendatakit.provider.FormsColumns;
 import org.opendatakit.provider.FormsProviderAPI;
 import org.opendatakit.survey.R;
 import org.opendatakit.survey.application.Survey;
-import org.opendatakit.utilities.LocalizationUtils;
+import org.opendatakit.survey.utilities.LocalizedDisplayNameCache;
 import org.opendatakit.utilities.ODKFileUtils;
 
 import java.io.File;
@@ -131,7 +131,7 @@ public class AndroidShortcuts extends BaseActivity {
             String localizableDisplayName =
                 CursorUtils.getIndexAsString(c, c.getColumnIndex(FormsColumns.DISPLAY_NAME));
             String formName = app.getName() + " > "
-                + LocalizationUtils.getLocalizedDisplayName(appName, tableId,
+                + LocalizedDisplayNameCache.getLocalizedDisplayName(appName, tableId,
                 props.getUserSelectedDefaultLocale(),
                 localizableDisplayName);
             uri = Uri.withAppendedPath(
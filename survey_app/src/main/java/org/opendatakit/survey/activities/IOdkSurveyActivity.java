@@ -36,6 +36,32 @@ public interface IOdkSurveyActivity extends IOdkCommonActivity, IOdkDataActivity
 
   public String getRefId();
 
+  /**
+   * Fetch several queued odkData responses with one bridge crossing.
+   *
+   * @param maxBytes approximate size budget (UTF-16 bytes); zero or less uses a default
+   * @return JSON array of the responses, oldest first; "[]" if none are queued
+   */
+  public String getResponseJSONBatch(int maxBytes);
+
+  /**
+   * Take the oldest queued odkData response for reading in chunks.
+   *
+   * @param chunkChars characters per chunk; zero or less uses a default
+   * @return JSON descriptor {"streamId":n,"length":chars,"chunkCount":k}, null if
+   * no response is queued, or {"busy":true} if too many streams are open
+   */
+  public String openResponseStream(int chunkChars);
+
+  /**
+   * @param streamId
+   * @param chunkIndex zero-based; reading the last chunk releases the stream
+   * @return the chunk, or null if the stream or index is invalid
+   */
+  public String getResponseChunk(int streamId, int chunkIndex);
+
+  public void closeResponseStream(int streamId);
+
   public void setInstanceId(String instanceId);
 
   public String getInstanceId();
@@ -21,14 +21,14 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentManager.BackStackEntry;
 import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.Lifecycle;
 import android.content.ActivityNotFoundException;
 import android.content.ComponentName;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Parcel;
-import android.os.Parcelable;
+import android.util.Base64;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
@@ -42,8 +42,6 @@ import org.opendatakit.database.queries.BindArgs;
 import org.opendatakit.database.queries.ResumableQuery;
 import org.opendatakit.database.queries.SingleRowQuery;
 import org.opendatakit.database.service.DbHandle;
-import org.opendatakit.database.service.TableHealthInfo;
-import org.opendatakit.database.service.TableHealthStatus;
 import org.opendatakit.database.service.UserDbInterface;
 import org.opendatakit.database.utilities.QueryUtil;
 import org.opendatakit.exception.ActionNotAuthorizedException;
@@ -59,14 +57,23 @@ import org.opendatakit.properties.PropertyManager;
 import org.opendatakit.provider.FormsColumns;
 import org.opendatakit.provider.FormsProviderAPI;
 import org.opendatakit.provider.FormsProviderUtils;
+import org.opendatakit.survey.BuildConfig;
 import org.opendatakit.survey.R;
 import org.opendatakit.survey.application.Survey;
 import org.opendatakit.survey.fragments.BackPressWebkitConfirmationDialogFragment;
 import org.opendatakit.survey.fragments.FormChooserListFragment;
 import org.opendatakit.survey.fragments.InitializationFragment;
 import org.opendatakit.survey.fragments.WebViewFragment;
+import org.opendatakit.survey.logic.ChunkedResponseStore;
+import org.opendatakit.survey.logic.ConflictTableScanner;
 import org.opendatakit.survey.logic.FormIdStruct;
+import org.opendatakit.survey.logic.QueryPrefetcher;
+import org.opendatakit.survey.logic.QueryResultCache;
+import org.opendatakit.survey.logic.ResponseQueue;
+import org.opendatakit.survey.logic.SectionScreenHistory;
+import org.opendatakit.survey.logic.SessionStateStore;
 import org.opendatakit.survey.logic.SurveyDataExecutorProcessor;
+import org.opendatakit.survey.views.BridgeMetrics;
 import org.opendatakit.utilities.ODKFileUtils;
 import org.opendatakit.views.ExecutorContext;
 import org.opendatakit.views.ExecutorProcessor;
@@ -76,13 +83,17 @@ import org.opendatakit.webkitserver.utilities.DoActionUtils;
 import org.opendatakit.webkitserver.utilities.UrlUtils;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Responsible for displaying buttons to launch the major activities. Launches
@@ -90,7 +101,8 @@ import java.util.UUID;
  *
  * @author mitchellsundt@gmail.com
  */
-public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity {
+public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity,
+    ConflictTableScanner.ConflictScanListener {
 
   private static final String t = MainMenuActivity.class.getSimpleName();
   public enum ScreenList {
@@ -119,7 +131,12 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
   private static final String CURRENT_FRAGMENT_TYPE = "currentFragment";
 
   private static final String QUEUED_ACTIONS = "queuedActions";
-  private static final String RESPONSE_JSON = "responseJSON";
+
+  // default size budget for getResponseJSONBatch()
+  private static final int DEFAULT_RESPONSE_BATCH_BYTES = 1024 * 1024;
+
+  // the bulky session state is kept in the SessionStateStore under this token
+  private static final String SESSION_STATE_TOKEN = "sessionStateToken";
 
   /** tables that have conflict rows */
   public static final String CONFLICT_TABLES = "conflictTables";
@@ -130,6 +147,8 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
   private static final int MENU_PREFERENCES = Menu.FIRST + 1;
   private static final int MENU_EDIT_INSTANCE = Menu.FIRST + 2;
   private static final int MENU_ABOUT = Menu.FIRST + 3;
+  // debug builds only
+  private static final int MENU_BRIDGE_METRICS = Menu.FIRST + 4;
 
   // activity callback codes
   private static final int HANDLER_ACTIVITY_CODE = 20;
@@ -149,64 +168,6 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
     */
   private enum PopBackStackArgs {CANCEL_IGNORE_CHANGES,SAVE_INCOMPLETE,NOT_A_FORM}
 
-  private static class ScreenState {
-    String screenPath;
-    String state;
-
-    ScreenState(String screenPath, String state) {
-      this.screenPath = screenPath;
-      this.state = state;
-    }
-  }
-
-  private static class SectionScreenStateHistory implements Parcelable {
-    ScreenState currentScreen = new ScreenState(null, null);
-    ArrayList<ScreenState> history = new ArrayList<ScreenState>();
-
-    @Override
-    public int describeContents() {
-      return 0;
-    }
-
-    @Override
-    public void writeToParcel(Parcel dest, int flags) {
-      dest.writeString(currentScreen.screenPath);
-      dest.writeString(currentScreen.state);
-
-      dest.writeInt(history.size());
-      for (int i = 0; i < history.size(); ++i) {
-        ScreenState screen = history.get(i);
-        dest.writeString(screen.screenPath);
-        dest.writeString(screen.state);
-      }
-    }
-
-    public static final Parcelable.Creator<SectionScreenStateHistory> CREATOR = new Parcelable.Creator<SectionScreenStateHistory>() {
-      public SectionScreenStateHistory createFromParcel(Parcel in) {
-        SectionScreenStateHistory cur = new SectionScreenStateHistory();
-        String screenPath = in.readString();
-        String state = in.readString();
-        cur.currentScreen = new ScreenState(screenPath, state);
-        int count = in.readInt();
-        for (int i = 0; i < count; ++i) {
-          screenPath = in.readString();
-          state = in.readString();
-          cur.history.add(new ScreenState(screenPath, state));
-        }
-        return cur;
-      }
-
-      @Override
-      public SectionScreenStateHistory[] newArray(int size) {
-        SectionScreenStateHistory[] array = new SectionScreenStateHistory[size];
-        for (int i = 0; i < size; ++i) {
-          array[i] = null;
-        }
-        return array;
-      }
-    };
-  }
-
   /**
    * Member variables that are saved and restored across orientation changes.
    */
@@ -222,7 +183,7 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
   private String instanceId = null;
 
   private Bundle sessionVariables = new Bundle();
-  private ArrayList<SectionScreenStateHistory> sectionStateScreenHistory = new ArrayList<SectionScreenStateHistory>();
+  private SectionScreenHistory sectionScreenHistory = new SectionScreenHistory();
 
   private final String refId = UUID.randomUUID().toString();
   private String auxillaryHash = null;
@@ -232,7 +193,12 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
 
   private LinkedList<String> queuedActions = new LinkedList<String>();
 
-  LinkedList<String> queueResponseJSON = new LinkedList<String>();
+  // responses waiting to be fetched by the WebView, oldest first
+  private final ResponseQueue queueResponseJSON = new ResponseQueue();
+  // responses the WebView is reading in chunks
+  private final ChunkedResponseStore chunkedResponses = new ChunkedResponseStore();
+  // true while a responseAvailable notification is posted but has not yet run
+  private final AtomicBoolean responseSignalPending = new AtomicBoolean(false);
 
   // DO NOT USE THESE -- only used to determine if the current form has changed.
   private String trackingFormPath = null;
@@ -249,6 +215,17 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
    * changes, etc.
    */
 
+  // results of the queries issued through getDatabase()
+  private final QueryResultCache queryResultCache = new QueryResultCache();
+  // warms queryResultCache with the queries of the screens likely to come next
+  private final QueryPrefetcher queryPrefetcher = new QueryPrefetcher(queryResultCache);
+
+  // true while a background conflict scan is outstanding
+  private boolean mConflictScanPending = false;
+
+  // holds the session state that is too large for the saved instance state Bundle
+  private SessionStateStore mSessionStateStore = null;
+
   private DatabaseConnectionListener mIOdkDataDatabaseListener;
   // no need to preserve
   private PropertyManager mPropertyManager;
@@ -298,19 +275,26 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
     if (getAppName() != null) {
       outState.putString(IntentConsts.INTENT_KEY_APP_NAME, getAppName());
     }
-    outState.putBundle(SESSION_VARIABLES, sessionVariables);
 
-    outState.putParcelableArrayList(SECTION_STATE_SCREEN_HISTORY, sectionStateScreenHistory);
-
-    if ( !queuedActions.isEmpty() ) {
-      String[] actionOutcomesArray = new String[queuedActions.size()];
-      queuedActions.toArray(actionOutcomesArray);
-      outState.putStringArray(QUEUED_ACTIONS, actionOutcomesArray);
-    }
-
-    if ( !queueResponseJSON.isEmpty() ) {
-      String[] qra = queueResponseJSON.toArray(new String[queueResponseJSON.size()]);
-      outState.putStringArray(RESPONSE_JSON, qra);
+    if (mSessionStateStore != null) {
+      // only sections that changed since the last save are rewritten
+      ArrayList<String> sessionValues = new ArrayList<String>();
+      for (String elementPath : sessionVariables.keySet()) {
+        sessionValues.add(elementPath);
+        sessionValues.add(sessionVariables.getString(elementPath));
+      }
+      HashMap<String, List<String>> sections = new HashMap<String, List<String>>();
+      sections.put(SESSION_VARIABLES, sessionValues);
+      sections.put(SECTION_STATE_SCREEN_HISTORY, Collections.singletonList(
+          Base64.encodeToString(sectionScreenHistory.toByteArray(), Base64.NO_WRAP)));
+      sections.put(QUEUED_ACTIONS, queuedActions);
+      // the pending responses are journaled as they are queued (see onCreate())
+      // the token is only usable once the state is safely on disk
+      if (mSessionStateStore.commit(sections)) {
+        outState.putString(SESSION_STATE_TOKEN, mSessionStateStore.getToken());
+      } else {
+        WebLogger.getLogger(getAppName()).e(t, "onSaveInstanceState: session state not saved");
+      }
     }
 
     if (mConflictTables != null && !mConflictTables.isEmpty()) {
@@ -345,56 +329,58 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
     super.onStop();
   }
 
+  @Override
+  protected void onDestroy() {
+    WebLogger.getLogger(getAppName()).i(t, "onDestroy: response queue "
+        + queueResponseJSON.getMetrics() + " query cache " + queryResultCache.getMetrics());
+    if (mSessionStateStore != null) {
+      // responses given to this instance from now on are not part of its saved state
+      mSessionStateStore.detach(queueResponseJSON);
+      // the saved session state is only needed if this activity will be recreated
+      if (isFinishing()) {
+        mSessionStateStore.discard();
+      }
+    }
+    super.onDestroy();
+  }
+
   @SuppressLint("InlinedApi")
   @Override
   protected void onStart() {
     super.onStart();
   }
 
-  public void scanForConflictAllTables() {
-    
-    UserDbInterface db = ((Survey) getApplication()).getDatabase();
-    if ( db != null ) {
-      List<TableHealthInfo> info;
-      DbHandle dbHandle = null;
-      try {
-        dbHandle = db.openDatabase(appName);
-        info = db.getTableHealthStatuses(getAppName(), dbHandle);
-      } catch (ServicesAvailabilityException e) {
-        WebLogger.getLogger(appName).printStackTrace(e);
-        return;
-      } finally {
-        try {
-          if ( dbHandle != null ) {
-            db.closeDatabase(appName, dbHandle);
-          }
-        } catch (ServicesAvailabilityException e) {
-          WebLogger.getLogger(appName).printStackTrace(e);
-        }
-      }
-      
-      if ( info != null ) {
-
-        Bundle conflictTables = new Bundle();
-
-        for (TableHealthInfo tableInfo : info) {
-          TableHealthStatus status = tableInfo.getHealthStatus();
-          if ( status == TableHealthStatus.TABLE_HEALTH_HAS_CONFLICTS ||
-               status == TableHealthStatus.TABLE_HEALTH_HAS_CHECKPOINTS_AND_CONFLICTS ) {
-              conflictTables.putString(tableInfo.getTableId(), tableInfo.getTableId());
-          }
-        }
-        
-        mConflictTables = conflictTables;
+  private void resolveAnyConflicts() {
+    if (mConflictTables == null || mConflictTables.isEmpty()) {
+      // scan off the UI thread; conflictScanCompleted() resumes the resolution. The scan
+      // does not go through the query result cache.
+      UserDbInterface db = ((CommonApplication) getApplication()).getDatabase();
+      if (db != null && !mConflictScanPending) {
+        mConflictScanPending = true;
+        ConflictTableScanner.scan(db, getAppName(), this);
       }
+      return;
     }
+
+    launchConflictResolution();
   }
 
-  private void resolveAnyConflicts() {
-    if (mConflictTables == null || mConflictTables.isEmpty()) {
-      scanForConflictAllTables();
+  @Override
+  public void conflictScanCompleted(String appName, Bundle conflictTables) {
+    mConflictScanPending = false;
+    if (isFinishing() || isDestroyed() || !appName.equals(getAppName())) {
+      return;
+    }
+    if (conflictTables != null) {
+      mConflictTables = conflictTables;
     }
+    // if we are not in the foreground, the next databaseAvailable() launches it
+    if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+      launchConflictResolution();
+    }
+  }
 
+  private void launchConflictResolution() {
     if ((mConflictTables != null) && !mConflictTables.isEmpty()) {
       Iterator<String> iterator = mConflictTables.keySet().iterator();
       String tableId = iterator.next();
@@ -419,6 +405,7 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
 
   @Override
   public void databaseAvailable() {
+    queryResultCache.invalidateAll();
     if ( getAppName() != null ) {
       resolveAnyConflicts();
     }
@@ -436,6 +423,11 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
 
   @Override
   public void databaseUnavailable() {
+    queryResultCache.invalidateAll();
+    // the database may change while we are disconnected
+    if ( getAppName() != null ) {
+      ConflictTableScanner.invalidate(getAppName());
+    }
     FragmentManager mgr = this.getSupportFragmentManager();
     if ( currentFragmentType != null ) {
       Fragment fragment = mgr.findFragmentByTag(currentFragmentType.name());
@@ -451,6 +443,10 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
   public void setCurrentForm(FormIdStruct currentForm) {
     WebLogger.getLogger(getAppName()).i(t,
         "setCurrentForm: " + ((currentForm == null) ? "null" : currentForm.formPath));
+    if (this.currentForm != currentForm) {
+      // screen paths are only meaningful within one form
+      queryPrefetcher.reset();
+    }
     this.currentForm = currentForm;
   }
 
@@ -735,6 +731,14 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
 
       WebLogger.getLogger(getAppName()).i(t, "Starting up, creating directories");
 
+      boolean restoringSessionState = (savedInstanceState != null &&
+          savedInstanceState.containsKey(SESSION_STATE_TOKEN));
+      String sessionStateToken = restoringSessionState ?
+          savedInstanceState.getString(SESSION_STATE_TOKEN) : refId;
+      // starts reading any saved state in the background while the rest of onCreate runs
+      mSessionStateStore = new SessionStateStore(this, getAppName(), sessionStateToken,
+          getTaskId(), restoringSessionState);
+
       if (savedInstanceState != null) {
         // if we are restoring, assume that initialization has already occurred.
 
@@ -775,23 +779,37 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
             savedInstanceState.getString(AUXILLARY_HASH) :
             getAuxillaryHash());
 
-        if (savedInstanceState.containsKey(SESSION_VARIABLES)) {
-          sessionVariables = savedInstanceState.getBundle(SESSION_VARIABLES);
-        }
+        if (savedInstanceState.containsKey(SESSION_STATE_TOKEN)) {
+          Map<String, ArrayList<String>> sections = mSessionStateStore.restore();
 
-        if (savedInstanceState.containsKey(SECTION_STATE_SCREEN_HISTORY)) {
-          sectionStateScreenHistory = savedInstanceState.getParcelableArrayList(SECTION_STATE_SCREEN_HISTORY);
-        }
+          List<String> sessionValues = sections.get(SESSION_VARIABLES);
+          if (sessionValues != null) {
+            sessionVariables = new Bundle();
+            for (int i = 0; i + 1 < sessionValues.size(); i += 2) {
+              sessionVariables.putString(sessionValues.get(i), sessionValues.get(i + 1));
+            }
+          }
 
-        if (savedInstanceState.containsKey(QUEUED_ACTIONS)) {
-          String[] actionOutcomesArray = savedInstanceState.getStringArray(QUEUED_ACTIONS);
-          queuedActions.clear();
-          queuedActions.addAll(Arrays.asList(actionOutcomesArray));
-        }
+          // a corrupt history leaves the screen restored from the Bundle above
+          List<String> historyValues = sections.get(SECTION_STATE_SCREEN_HISTORY);
+          if (historyValues != null && historyValues.size() == 1) {
+            try {
+              sectionScreenHistory = SectionScreenHistory.fromByteArray(
+                  Base64.decode(historyValues.get(0), Base64.NO_WRAP));
+            } catch (IOException e) {
+              WebLogger.getLogger(getAppName()).w(t,
+                  "onCreate: discarding unreadable screen history " + e.toString());
+            } catch (IllegalArgumentException e) {
+              WebLogger.getLogger(getAppName()).w(t,
+                  "onCreate: discarding unreadable screen history " + e.toString());
+            }
+          }
 
-        if (savedInstanceState != null && savedInstanceState.containsKey(RESPONSE_JSON)) {
-          String[] pendingResponseJSON = savedInstanceState.getStringArray(RESPONSE_JSON);
-          queueResponseJSON.addAll(Arrays.asList(pendingResponseJSON));
+          List<String> actionOutcomes = sections.get(QUEUED_ACTIONS);
+          if (actionOutcomes != null) {
+            queuedActions.clear();
+            queuedActions.addAll(actionOutcomes);
+          }
         }
       } else if (formUri != null) {
         // request specifies a specific formUri -- try to open that
@@ -803,6 +821,9 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
           transitionToFormHelper(uri, newForm);
         }
       }
+
+      // re-queues any restored responses and journals the queue from here on
+      mSessionStateStore.attach(queueResponseJSON);
     } catch (Exception e) {
       createErrorDialog(e.getMessage(), EXIT);
     } finally {
@@ -822,6 +843,11 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
   @Override
   public void onPostResume() {
     super.onPostResume();
+    // another app or a sync may have changed the data while we were paused
+    queryResultCache.invalidateAll();
+    if ( getAppName() != null ) {
+      ConflictTableScanner.invalidate(getAppName());
+    }
     ((Survey) getApplication()).fireDatabaseConnectionListener();
   }
 
@@ -842,6 +868,12 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
 
       item = menu.add(Menu.NONE, MENU_ABOUT, Menu.NONE, getString(R.string.about));
       item.setIcon(R.drawable.ic_info_outline_black_24dp).setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+
+      if (BuildConfig.DEBUG) {
+        item = menu.add(Menu.NONE, MENU_BRIDGE_METRICS, Menu.NONE,
+            getString(R.string.bridge_metrics));
+        item.setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+      }
     } else {
       getSupportActionBar().hide();
     }
@@ -885,10 +917,34 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
     } else if (item.getItemId() == MENU_ABOUT) {
       swapToFragmentView(ScreenList.ABOUT_MENU);
       return true;
+    } else if (item.getItemId() == MENU_BRIDGE_METRICS) {
+      showBridgeMetrics();
+      return true;
     }
     return super.onOptionsItemSelected(item);
   }
 
+  private void showBridgeMetrics() {
+    if (mAlertDialog != null) {
+      mAlertDialog.dismiss();
+      mAlertDialog = null;
+    }
+    mAlertDialog = new AlertDialog.Builder(this)
+        .setTitle(R.string.bridge_metrics)
+        .setMessage(BridgeMetrics.getSummary() + "\n\nresponse queue "
+            + queueResponseJSON.getMetrics() + "\n\nquery cache "
+            + queryResultCache.getMetrics())
+        .setPositiveButton(R.string.ok, null)
+        .setNeutralButton(R.string.reset_bridge_metrics, new DialogInterface.OnClickListener() {
+          @Override
+          public void onClick(DialogInterface dialog, int which) {
+            BridgeMetrics.reset();
+          }
+        })
+        .create();
+    mAlertDialog.show();
+  }
+
   @Override
   public void chooseForm(Uri formUri) {
     Intent i = new Intent(Intent.ACTION_EDIT, formUri, this, MainMenuActivity.class);
@@ -1223,37 +1279,15 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
     WebLoggerIf l = WebLogger.getLogger(getAppName());
 
     l.d(t, "-------------*start* dumpScreenStateHistory--------------------");
-    if (sectionStateScreenHistory.isEmpty()) {
-      l.d(t, "sectionScreenStateHistory EMPTY");
-    } else {
-      for (int i = sectionStateScreenHistory.size() - 1; i >= 0; --i) {
-        SectionScreenStateHistory thisSection = sectionStateScreenHistory.get(i);
-        l.d(t, "[" + i + "] screenPath: " + thisSection.currentScreen.screenPath);
-        l.d(t, "[" + i + "] state:      " + thisSection.currentScreen.state);
-        if (thisSection.history.isEmpty()) {
-          l.d(t, "[" + i + "] history[] EMPTY");
-        } else {
-          for (int j = thisSection.history.size() - 1; j >= 0; --j) {
-            ScreenState ss = thisSection.history.get(j);
-            l.d(t, "[" + i + "] history[" + j + "] screenPath: " + ss.screenPath);
-            l.d(t, "[" + i + "] history[" + j + "] state:      " + ss.state);
-          }
-        }
-      }
-    }
+    sectionScreenHistory.dump(l, t);
     l.d(t, "------------- *end*  dumpScreenStateHistory--------------------");
   }
 
   @Override
   public void pushSectionScreenState() {
-    if (sectionStateScreenHistory.size() == 0) {
+    if (!sectionScreenHistory.pushScreen()) {
       WebLogger.getLogger(getAppName()).i(t, "pushSectionScreenState: NULL!");
-      return;
     }
-    SectionScreenStateHistory lastSection = sectionStateScreenHistory.get(sectionStateScreenHistory
-        .size() - 1);
-    lastSection.history.add(new ScreenState(lastSection.currentScreen.screenPath,
-        lastSection.currentScreen.state));
   }
 
   @Override
@@ -1263,127 +1297,62 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
           "setSectionScreenState: NULL currentScreen.screenPath!");
       return;
     } else {
-      String[] splits = screenPath.split("/");
-      String sectionName = splits[0] + "/";
-
-      WebLogger.getLogger(getAppName()).e(t,
-          "setSectionScreenState( " + screenPath + ", " + state + ")");
-
-      SectionScreenStateHistory lastSection;
-      if (sectionStateScreenHistory.size() == 0) {
-        sectionStateScreenHistory.add(new SectionScreenStateHistory());
-        lastSection = sectionStateScreenHistory.get(sectionStateScreenHistory.size() - 1);
-        lastSection.currentScreen.screenPath = screenPath;
-        lastSection.currentScreen.state = state;
-        lastSection.history.clear();
-      } else {
-        lastSection = sectionStateScreenHistory.get(sectionStateScreenHistory.size() - 1);
-        if (lastSection.currentScreen.screenPath.startsWith(sectionName)) {
-          lastSection.currentScreen.screenPath = screenPath;
-          lastSection.currentScreen.state = state;
-        } else {
-          sectionStateScreenHistory.add(new SectionScreenStateHistory());
-          lastSection = sectionStateScreenHistory.get(sectionStateScreenHistory.size() - 1);
-          lastSection.currentScreen.screenPath = screenPath;
-          lastSection.currentScreen.state = state;
-          lastSection.history.clear();
-        }
+      if (BuildConfig.DEBUG) {
+        WebLogger.getLogger(getAppName()).d(t,
+            "setSectionScreenState( " + screenPath + ", " + state + ")");
       }
+
+      sectionScreenHistory.setScreen(screenPath, state);
+      queryPrefetcher.screenChanged(getAppName(),
+          ((CommonApplication) getApplication()).getDatabase(), screenPath);
     }
   }
 
   @Override
   public void clearSectionScreenState() {
-    sectionStateScreenHistory.clear();
-    sectionStateScreenHistory.add(new SectionScreenStateHistory());
-    SectionScreenStateHistory lastSection = sectionStateScreenHistory.get(sectionStateScreenHistory
-        .size() - 1);
-    lastSection.currentScreen.screenPath = "initial/0";
-    lastSection.currentScreen.state = null;
-    lastSection.history.clear();
+    sectionScreenHistory.clear();
+    sectionScreenHistory.setScreen("initial/0", null);
   }
 
   @Override
   public String getControllerState() {
-    if (sectionStateScreenHistory.size() == 0) {
+    if (sectionScreenHistory.isEmpty()) {
       WebLogger.getLogger(getAppName()).i(t, "getControllerState: NULL!");
       return null;
     }
-    SectionScreenStateHistory lastSection = sectionStateScreenHistory.get(sectionStateScreenHistory
-        .size() - 1);
-    return lastSection.currentScreen.state;
+    return sectionScreenHistory.getState();
   }
 
   public String getScreenPath() {
-    dumpScreenStateHistory();
-    if (sectionStateScreenHistory.size() == 0) {
+    if (BuildConfig.DEBUG) {
+      // logs every screen in the history; far too costly for every call in release builds
+      dumpScreenStateHistory();
+    }
+    if (sectionScreenHistory.isEmpty()) {
       WebLogger.getLogger(getAppName()).i(t, "getScreenPath: NULL!");
       return null;
     }
-    SectionScreenStateHistory lastSection = sectionStateScreenHistory.get(sectionStateScreenHistory
-        .size() - 1);
-    return lastSection.currentScreen.screenPath;
+    return sectionScreenHistory.getScreenPath();
   }
 
   @Override
   public boolean hasScreenHistory() {
-    // two or more sections -- there must be history
-    if (sectionStateScreenHistory.size() > 1) {
-      return true;
-    }
-    // no sections -- no history
-    if (sectionStateScreenHistory.size() == 0) {
-      return false;
-    }
-
-    SectionScreenStateHistory thisSection = sectionStateScreenHistory.get(0);
-    return thisSection.history.size() != 0;
+    return sectionScreenHistory.hasScreenHistory();
   }
 
   @Override
   public String popScreenHistory() {
-    if (sectionStateScreenHistory.size() == 0) {
-      return null;
-    }
-
-    SectionScreenStateHistory lastSection;
-    lastSection = sectionStateScreenHistory.get(sectionStateScreenHistory.size() - 1);
-    if (lastSection.history.size() != 0) {
-      ScreenState lastHistory = lastSection.history.remove(lastSection.history.size() - 1);
-      lastSection.currentScreen.screenPath = lastHistory.screenPath;
-      lastSection.currentScreen.state = lastHistory.state;
-      return lastSection.currentScreen.screenPath;
-    }
-
-    // pop to an enclosing screen
-    sectionStateScreenHistory.remove(sectionStateScreenHistory.size() - 1);
-
-    if (sectionStateScreenHistory.size() == 0) {
-      return null;
-    }
-
-    lastSection = sectionStateScreenHistory.get(sectionStateScreenHistory.size() - 1);
-    return lastSection.currentScreen.screenPath;
+    return sectionScreenHistory.popScreen();
   }
 
   @Override
   public boolean hasSectionStack() {
-    return sectionStateScreenHistory.size() != 0;
+    return !sectionScreenHistory.isEmpty();
   }
 
   @Override
   public String popSectionStack() {
-    if (sectionStateScreenHistory.size() != 0) {
-      sectionStateScreenHistory.remove(sectionStateScreenHistory.size() - 1);
-    }
-
-    if (sectionStateScreenHistory.size() != 0) {
-      SectionScreenStateHistory lastSection = sectionStateScreenHistory
-          .get(sectionStateScreenHistory.size() - 1);
-      return lastSection.currentScreen.screenPath;
-    }
-
-    return null;
+    return sectionScreenHistory.popSection();
   }
 
   @Override
@@ -1514,32 +1483,108 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
           + responseJSON.length() + " long responseJSON!");
     }
     if ( responseJSON != null) {
-      this.queueResponseJSON.push(responseJSON);
-      final ODKWebView webView = findViewById(R.id.webkit);
-      if (webView != null) {
-        final String appName = getAppName();
-        runOnUiThread(new Runnable() {
-          @Override
-          public void run() {
-            WebLogger.getLogger(appName).d(t, "signalResponseAvailable [" + this.hashCode() +
-                "][WebView: " + webView.hashCode() +
-                "] onUiThread: webView.loadUrl(\"javascript:odkData.responseAvailable();\")");
-            webView.signalResponseAvailable();
-          }
-        });
-      }
+      // may wait here if the WebView has fallen behind
+      long requestId = this.queueResponseJSON.offer(getAppName(), responseJSON);
+      WebLogger.getLogger(getAppName()).d(t, "signalResponseAvailable -- queued response "
+          + requestId);
+      scheduleResponseAvailableSignal();
     }
   }
 
+  /**
+   * Notify the WebView that responses are waiting. At most one notification is pending at a
+   * time, so responses queued before it runs share one javascript evaluation. The odkData
+   * javascript fetches one response per notification, so the fetch methods schedule the next
+   * notification at once if responses remain; it is posted to the UI thread rather than
+   * deferred to an animation frame so that draining a burst does not wait a frame per
+   * response.
+   */
+  private void scheduleResponseAvailableSignal() {
+    final ODKWebView webView = findViewById(R.id.webkit);
+    if (webView == null) {
+      return;
+    }
+    if (!responseSignalPending.compareAndSet(false, true)) {
+      // the pending notification covers this response
+      return;
+    }
+    final String appName = getAppName();
+    webView.post(new Runnable() {
+      @Override
+      public void run() {
+        responseSignalPending.set(false);
+        if (queueResponseJSON.isEmpty()) {
+          // already fetched by an earlier notification
+          return;
+        }
+        WebLogger.getLogger(appName).d(t, "signalResponseAvailable [" + this.hashCode() +
+            "][WebView: " + webView.hashCode() +
+            "] onUiThread: webView.loadUrl(\"javascript:odkData.responseAvailable();\")");
+        webView.signalResponseAvailable();
+      }
+    });
+  }
+
   @Override
   public String getResponseJSON(String unused) {
-    if ( queueResponseJSON.isEmpty() ) {
-      return null;
+    String responseJSON = queueResponseJSON.poll();
+    if (!queueResponseJSON.isEmpty()) {
+      scheduleResponseAvailableSignal();
     }
-    String responseJSON = queueResponseJSON.removeFirst();
     return responseJSON;
   }
 
+  @Override
+  public String getResponseJSONBatch(int maxBytes) {
+    List<String> responses = queueResponseJSON.pollBatch(
+        (maxBytes > 0) ? maxBytes : DEFAULT_RESPONSE_BATCH_BYTES);
+    if (!queueResponseJSON.isEmpty()) {
+      scheduleResponseAvailableSignal();
+    }
+    int length = 2;
+    for (String responseJSON : responses) {
+      length += responseJSON.length() + 1;
+    }
+    // each response is already JSON, so the array is assembled without re-parsing
+    StringBuilder b = new StringBuilder(length);
+    b.append('[');
+    for (int i = 0; i < responses.size(); ++i) {
+      if (i != 0) {
+        b.append(',');
+      }
+      b.append(responses.get(i));
+    }
+    b.append(']');
+    return b.toString();
+  }
+
+  @Override
+  public String openResponseStream(int chunkChars) {
+    String descriptor = chunkedResponses.open(getAppName(), queueResponseJSON, chunkChars);
+    // when busy, the WebView is re-signalled once a stream is released
+    if (!ChunkedResponseStore.BUSY.equals(descriptor) && !queueResponseJSON.isEmpty()) {
+      scheduleResponseAvailableSignal();
+    }
+    return descriptor;
+  }
+
+  @Override
+  public String getResponseChunk(int streamId, int chunkIndex) {
+    String chunk = chunkedResponses.getChunk(streamId, chunkIndex);
+    if (chunkedResponses.takeCapacityAvailable() && !queueResponseJSON.isEmpty()) {
+      scheduleResponseAvailableSignal();
+    }
+    return chunk;
+  }
+
+  @Override
+  public void closeResponseStream(int streamId) {
+    chunkedResponses.close(streamId);
+    if (chunkedResponses.takeCapacityAvailable() && !queueResponseJSON.isEmpty()) {
+      scheduleResponseAvailableSignal();
+    }
+  }
+
   @Override
   public ExecutorProcessor newExecutorProcessor(ExecutorContext context) {
     return new SurveyDataExecutorProcessor(context);
@@ -1552,7 +1597,9 @@ public class MainMenuActivity extends BaseActivity implements IOdkSurveyActivity
 
   @Override
   public UserDbInterface getDatabase() {
-    return ((CommonApplication) getApplication()).getDatabase();
+    // the odkData executor reaches the database through here, so repeated queries from the
+    // form are answered by the query result cache
+    return queryResultCache.wrap(((CommonApplication) getApplication()).getDatabase());
   }
 
   @Override
@@ -14,19 +14,24 @@
 
 package org.opendatakit.survey.fragments;
 
-import androidx.fragment.app.ListFragment;
+import androidx.fragment.app.Fragment;
 import androidx.loader.app.LoaderManager;
 import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import android.net.Uri;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ListView;
+import android.widget.EditText;
 
 import org.opendatakit.activities.IAppAwareActivity;
 import org.opendatakit.properties.CommonToolProperties;
@@ -36,11 +41,11 @@ import org.opendatakit.survey.R;
 import org.opendatakit.survey.activities.IOdkSurveyActivity;
 import org.opendatakit.survey.utilities.FormInfo;
 import org.opendatakit.survey.utilities.FormListLoader;
+import org.opendatakit.survey.utilities.FormSearchIndex;
 import org.opendatakit.survey.utilities.TableIdFormIdVersionListAdapter;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 
 import static org.opendatakit.properties.CommonToolProperties.*;
 
@@ -49,11 +54,14 @@ import static org.opendatakit.properties.CommonToolProperties.*;
  *
  * @author mitchellsundt@gmail.com
  */
-public class FormChooserListFragment extends ListFragment
-    implements LoaderManager.LoaderCallbacks<ArrayList<FormInfo>> {
+public class FormChooserListFragment extends Fragment
+    implements LoaderManager.LoaderCallbacks<ArrayList<FormInfo>>,
+    TableIdFormIdVersionListAdapter.OnFormClickListener {
 
   private static ArrayList<FormInfo> mItems = new ArrayList<FormInfo>();
   private TableIdFormIdVersionListAdapter mAdapter;
+  private FormSearchIndex mSearchIndex = FormSearchIndex.EMPTY;
+  private String mSearchQuery = "";
   private  PropertiesSingleton mPropSingleton;
   private static String mAppName;
   private static final String SORT_BY_TABLEID = "sortByTableID";
@@ -74,6 +82,8 @@ public class FormChooserListFragment extends ListFragment
 
 
   private View view;
+  private RecyclerView mFormList;
+  private View mEmptyView;
 
 
   @Override
@@ -115,7 +125,7 @@ public class FormChooserListFragment extends ListFragment
         return super.onOptionsItemSelected(item);
     }
 
-    mAdapter.swapData(mItems);
+    applySearchFilter();
     return true;
 
   }
@@ -134,8 +144,8 @@ public class FormChooserListFragment extends ListFragment
 
     // render total instance view
     mAdapter = new TableIdFormIdVersionListAdapter(getActivity(), R.layout.two_item, R.id.text1,
-        R.id.text2, R.id.text3);
-    setListAdapter(mAdapter);
+        R.id.text2, R.id.text3, this);
+    mFormList.setAdapter(mAdapter);
 
     getLoaderManager().initLoader(FORM_CHOOSER_LIST_LOADER, null, this);
   }
@@ -143,9 +153,55 @@ public class FormChooserListFragment extends ListFragment
   @Override public View onCreateView(LayoutInflater inflater, ViewGroup container,
       Bundle savedInstanceState) {
     view = inflater.inflate(ID, container, false);
+
+    mEmptyView = view.findViewById(android.R.id.empty);
+    mFormList = view.findViewById(R.id.form_list);
+    LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+    mFormList.setLayoutManager(layoutManager);
+    mFormList.addItemDecoration(new DividerItemDecoration(getActivity(),
+        layoutManager.getOrientation()));
+
+    EditText searchBox = view.findViewById(R.id.form_search);
+    searchBox.addTextChangedListener(new TextWatcher() {
+      @Override
+      public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+      }
+
+      @Override
+      public void onTextChanged(CharSequence s, int start, int before, int count) {
+      }
+
+      @Override
+      public void afterTextChanged(Editable s) {
+        mSearchQuery = s.toString();
+        applySearchFilter();
+      }
+    });
     return view;
   }
 
+  // Shows the forms matching the search box, in the current sort order
+  private void applySearchFilter() {
+    if (mAdapter == null) {
+      return;
+    }
+    mAdapter.swapData(mSearchIndex.filter(mItems, mSearchQuery), new Runnable() {
+      @Override
+      public void run() {
+        updateEmptyView();
+      }
+    });
+  }
+
+  private void updateEmptyView() {
+    if (mAdapter == null || mEmptyView == null) {
+      return;
+    }
+    boolean isEmpty = (mAdapter.getItemCount() == 0);
+    mEmptyView.setVisibility(isEmpty ? View.VISIBLE : View.GONE);
+    mFormList.setVisibility(isEmpty ? View.GONE : View.VISIBLE);
+  }
+
   @Override public void onResume() {
     super.onResume();
   }
@@ -154,11 +210,8 @@ public class FormChooserListFragment extends ListFragment
     super.onPause();
   }
 
-  @Override public void onListItemClick(ListView l, View v, int position, long id) {
-    super.onListItemClick(l, v, position, id);
-
+  @Override public void onFormClick(FormInfo info) {
     // get uri to form
-    FormInfo info = (FormInfo) mAdapter.getItem(position);
     Uri formUri = Uri.withAppendedPath(Uri.withAppendedPath(
         Uri.withAppendedPath(FormsProviderAPI.CONTENT_URI,
             mAppName), info.tableId), info.formId);
@@ -176,12 +229,14 @@ public class FormChooserListFragment extends ListFragment
       ArrayList<FormInfo> dataset) {
 
     String sortingOrder = mPropSingleton.getProperty(KEY_SURVEY_SORT_ORDER);
-    mItems = dataset;
-    sortFormList(dataset,sortingOrder);
+    // the loader retains and reuses its list; sort a copy of it
+    mItems = new ArrayList<FormInfo>(dataset);
+    mSearchIndex = ((FormListLoader) loader).getSearchIndex();
+    sortFormList(mItems,sortingOrder);
 
     // Swap the new cursor in. (The framework will take care of closing the
     // old cursor once we return.)
-    mAdapter.swapData(dataset);
+    applySearchFilter();
   }
 
 
@@ -189,63 +244,18 @@ public class FormChooserListFragment extends ListFragment
     // This is called when the last Cursor provided to onLoadFinished()
     // above is about to be closed. We need to make sure we are no
     // longer using it.
+    mSearchIndex = FormSearchIndex.EMPTY;
     mAdapter.clear();
+    updateEmptyView();
   }
 
   //  Sorts the forms list according to sorting order
   private void sortFormList(ArrayList<FormInfo> forms, String sortingOrder) {
 
     if (sortingOrder.equals(SORT_BY_NAME)) {
-      Collections.sort(forms, new Comparator<FormInfo>() {
-        @Override
-        public int compare(FormInfo lhs, FormInfo rhs) {
-          int cmp = lhs.formDisplayName.compareToIgnoreCase(rhs.formDisplayName);
-          if (cmp != 0) {
-            return cmp;
-          }
-          cmp = lhs.tableId.compareToIgnoreCase(rhs.tableId);
-          if (cmp != 0) {
-            return cmp;
-          }
-          cmp = lhs.formId.compareToIgnoreCase(rhs.formId);
-          if (cmp != 0) {
-            return cmp;
-          }
-          cmp = lhs.formVersion.compareToIgnoreCase(rhs.formVersion);
-          if (cmp != 0) {
-            return cmp;
-          }
-          cmp = lhs.formDisplaySubtext.compareToIgnoreCase(rhs.formDisplaySubtext);
-          return cmp;
-        }
-      });
+      Collections.sort(forms, FormInfo.BY_DISPLAY_NAME);
     } else if (sortingOrder.equals(SORT_BY_TABLEID)) {
-
-      Collections.sort(forms, new Comparator<FormInfo>() {
-        @Override
-        public int compare(FormInfo left, FormInfo right) {
-          int cmp = left.tableId.compareToIgnoreCase(right.tableId);
-          if (cmp != 0) {
-            return cmp;
-          }
-          cmp = left.formDisplayName.compareToIgnoreCase(right.formDisplayName);
-          if (cmp != 0) {
-            return cmp;
-          }
-          cmp = left.formId.compareToIgnoreCase(right.formId);
-          if (cmp != 0) {
-            return cmp;
-          }
-          cmp = left.formVersion.compareToIgnoreCase(right.formVersion);
-          if (cmp != 0) {
-            return cmp;
-          }
-          cmp = left.formDisplaySubtext.compareToIgnoreCase(right.formDisplaySubtext);
-          return cmp;
-        }
-      });
-      mAdapter.swapData(mItems);
-
+      Collections.sort(forms, FormInfo.BY_TABLE_ID);
     }
   }
 
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import org.opendatakit.logging.WebLogger;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Holds responses that the WebView has chosen to read in fixed-size chunks rather than as
+ * one string, so that a very large query result never crosses the javascript bridge in one
+ * piece.
+ *
+ * A response is opened by taking it from the ResponseQueue; the WebView then reads the chunks
+ * by index. The response is released once its last chunk has been read or the stream is
+ * closed. Responses are never dropped: while MAX_OPEN_RESPONSES streams are open, open()
+ * refuses and leaves the response queued.
+ *
+ * Chunk boundaries never split a UTF-16 surrogate pair; a lone surrogate would not survive
+ * the bridge. Chunks therefore hold at most, not exactly, the requested number of characters.
+ *
+ * All methods are thread-safe.
+ */
+public final class ChunkedResponseStore {
+
+  private static final String t = ChunkedResponseStore.class.getSimpleName();
+
+  static final int DEFAULT_CHUNK_CHARS = 256 * 1024;
+  static final int MIN_CHUNK_CHARS = 4 * 1024;
+  static final int MAX_CHUNK_CHARS = 1024 * 1024;
+
+  // bounds the memory pinned by pages that read slowly or abandon a read
+  static final int MAX_OPEN_RESPONSES = 4;
+
+  /**
+   * Returned by open() while MAX_OPEN_RESPONSES streams are open.
+   */
+  public static final String BUSY = "{\"busy\":true}";
+
+  private static final class OpenResponse {
+    final String json;
+    // chunk i is json.substring(offsets[i], offsets[i + 1])
+    final int[] offsets;
+
+    OpenResponse(String json, int chunkChars) {
+      this.json = json;
+      int length = json.length();
+      int[] bounds = new int[(length / chunkChars) + 2];
+      int count = 0;
+      int start = 0;
+      do {
+        int end = Math.min(length, start + chunkChars);
+        if (end < length && Character.isHighSurrogate(json.charAt(end - 1))) {
+          // keep the pair together in the next chunk
+          --end;
+        }
+        if (count + 1 == bounds.length) {
+          bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+        }
+        bounds[count++] = start;
+        start = end;
+      } while (start < length);
+      bounds[count] = length;
+      this.offsets = Arrays.copyOf(bounds, count + 1);
+    }
+
+    int chunkCount() {
+      return offsets.length - 1;
+    }
+  }
+
+  private final LinkedHashMap<Integer, OpenResponse> openResponses =
+      new LinkedHashMap<Integer, OpenResponse>();
+  private int nextStreamId = 1;
+  // set when open() refused; cleared by the next release
+  private boolean waitingForCapacity = false;
+
+  /**
+   * Take the oldest response from the queue and open it for chunked reading.
+   *
+   * @param appName    used for logging
+   * @param queue
+   * @param chunkChars characters per chunk; zero or less uses the default
+   * @return a JSON descriptor: {"streamId":n,"length":chars,"chunkCount":k}; null if no
+   * response is queued; or BUSY if too many streams are open, in which case the response
+   * stays queued until a stream is released
+   */
+  public synchronized String open(String appName, ResponseQueue queue, int chunkChars) {
+    if (openResponses.size() >= MAX_OPEN_RESPONSES) {
+      if (queue.isEmpty()) {
+        return null;
+      }
+      WebLogger.getLogger(appName).w(t, "open: " + openResponses.size()
+          + " response streams are still open");
+      waitingForCapacity = true;
+      return BUSY;
+    }
+    String json = queue.poll();
+    if (json == null) {
+      return null;
+    }
+    int size = (chunkChars <= 0) ? DEFAULT_CHUNK_CHARS :
+        Math.min(MAX_CHUNK_CHARS, Math.max(MIN_CHUNK_CHARS, chunkChars));
+
+    int streamId = nextStreamId++;
+    OpenResponse response = new OpenResponse(json, size);
+    openResponses.put(streamId, response);
+    return "{\"streamId\":" + streamId + ",\"length\":" + json.length() +
+        ",\"chunkCount\":" + response.chunkCount() + "}";
+  }
+
+  /**
+   * @return true, once, if open() has refused since and a stream has since been released;
+   * the WebView should then be told that responses are waiting
+   */
+  public synchronized boolean takeCapacityAvailable() {
+    if (waitingForCapacity && openResponses.size() < MAX_OPEN_RESPONSES) {
+      waitingForCapacity = false;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @param streamId
+   * @param chunkIndex zero-based
+   * @return the chunk, or null if the stream is unknown or the index is out of range.
+   * Reading the last chunk releases the stream.
+   */
+  public synchronized String getChunk(int streamId, int chunkIndex) {
+    OpenResponse response = openResponses.get(streamId);
+    if (response == null || chunkIndex < 0 || chunkIndex >= response.chunkCount()) {
+      return null;
+    }
+    if (chunkIndex == response.chunkCount() - 1) {
+      openResponses.remove(streamId);
+    }
+    return response.json.substring(response.offsets[chunkIndex],
+        response.offsets[chunkIndex + 1]);
+  }
+
+  /**
+   * Release a stream without reading the rest of it.
+   *
+   * @param streamId
+   */
+  public synchronized void close(int streamId) {
+    openResponses.remove(streamId);
+  }
+
+  public synchronized void clear() {
+    openResponses.clear();
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import org.opendatakit.database.service.DbHandle;
+import org.opendatakit.database.service.TableHealthInfo;
+import org.opendatakit.database.service.TableHealthStatus;
+import org.opendatakit.database.service.UserDbInterface;
+import org.opendatakit.exception.ServicesAvailabilityException;
+import org.opendatakit.logging.WebLogger;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scans all tables of an appName for conflict rows on a background thread.
+ *
+ * The result is cached per appName so that repeated database connection callbacks do not
+ * repeat the table health scan. The cache for an appName must be invalidated whenever
+ * conflicts may have appeared or been resolved. Survey is not told when another app syncs or
+ * changes a table, so the activity invalidates it on every resume and when the database
+ * connection is lost.
+ *
+ * The listener is only weakly referenced, so a scan in progress does not keep a finished
+ * activity alive; if the listener has been collected, the result is dropped.
+ */
+public final class ConflictTableScanner {
+
+  private static final String t = ConflictTableScanner.class.getSimpleName();
+
+  /**
+   * Receives the scan result on the UI thread.
+   */
+  public interface ConflictScanListener {
+    /**
+     * @param appName
+     * @param conflictTables tableIds having conflicts (key and value are the tableId), or
+     *                       null if the scan failed. The bundle belongs to the listener.
+     */
+    void conflictScanCompleted(String appName, Bundle conflictTables);
+  }
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  // guarded by the class lock
+  private static final HashMap<String, Bundle> cachedConflictTables = new HashMap<String, Bundle>();
+  private static final HashMap<String, Long> generations = new HashMap<String, Long>();
+
+  private ConflictTableScanner() {
+  }
+
+  private static long getGeneration(String appName) {
+    Long generation = generations.get(appName);
+    return (generation == null) ? 0L : generation;
+  }
+
+  /**
+   * Discard the cached scan result for an appName.
+   *
+   * @param appName
+   */
+  public static synchronized void invalidate(String appName) {
+    generations.put(appName, getGeneration(appName) + 1L);
+    cachedConflictTables.remove(appName);
+  }
+
+  /**
+   * Deliver the conflict tables of an appName to the listener, on the UI thread. Uses the
+   * cached result if there is one; otherwise scans on a background thread.
+   *
+   * @param db
+   * @param appName
+   * @param listener
+   */
+  public static void scan(final UserDbInterface db, final String appName,
+      ConflictScanListener listener) {
+    final WeakReference<ConflictScanListener> weakListener =
+        new WeakReference<ConflictScanListener>(listener);
+    final long scanGeneration;
+    synchronized (ConflictTableScanner.class) {
+      Bundle cached = cachedConflictTables.get(appName);
+      if (cached != null) {
+        deliver(weakListener, appName, new Bundle(cached));
+        return;
+      }
+      scanGeneration = getGeneration(appName);
+    }
+
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final Bundle conflictTables = scanForConflictAllTables(db, appName);
+        if (conflictTables != null) {
+          synchronized (ConflictTableScanner.class) {
+            if (scanGeneration == getGeneration(appName)) {
+              cachedConflictTables.put(appName, new Bundle(conflictTables));
+            }
+          }
+        }
+        deliver(weakListener, appName, conflictTables);
+      }
+    });
+  }
+
+  private static void deliver(final WeakReference<ConflictScanListener> weakListener,
+      final String appName, final Bundle conflictTables) {
+    mainHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        ConflictScanListener listener = weakListener.get();
+        if (listener != null) {
+          listener.conflictScanCompleted(appName, conflictTables);
+        }
+      }
+    });
+  }
+
+  private static Bundle scanForConflictAllTables(UserDbInterface db, String appName) {
+    List<TableHealthInfo> info;
+    DbHandle dbHandle = null;
+    try {
+      dbHandle = db.openDatabase(appName);
+      info = db.getTableHealthStatuses(appName, dbHandle);
+    } catch (ServicesAvailabilityException e) {
+      WebLogger.getLogger(appName).printStackTrace(e);
+      return null;
+    } finally {
+      try {
+        if ( dbHandle != null ) {
+          db.closeDatabase(appName, dbHandle);
+        }
+      } catch (ServicesAvailabilityException e) {
+        WebLogger.getLogger(appName).printStackTrace(e);
+      }
+    }
+
+    if ( info == null ) {
+      WebLogger.getLogger(appName).w(t, "scanForConflictAllTables: no table health info");
+      return null;
+    }
+
+    Bundle conflictTables = new Bundle();
+
+    for (TableHealthInfo tableInfo : info) {
+      TableHealthStatus status = tableInfo.getHealthStatus();
+      if ( status == TableHealthStatus.TABLE_HEALTH_HAS_CONFLICTS ||
+           status == TableHealthStatus.TABLE_HEALTH_HAS_CHECKPOINTS_AND_CONFLICTS ) {
+          conflictTables.putString(tableInfo.getTableId(), tableInfo.getTableId());
+      }
+    }
+    return conflictTables;
+  }
+}
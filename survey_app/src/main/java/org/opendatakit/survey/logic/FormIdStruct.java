@@ -19,10 +19,17 @@ import android.database.Cursor;
 import android.net.Uri;
 import org.opendatakit.database.utilities.CursorUtils;
 import org.opendatakit.provider.FormsColumns;
+import org.opendatakit.provider.FormsProviderAPI;
 import org.opendatakit.utilities.ODKFileUtils;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Basic definitions of the current form being processed.
@@ -31,6 +38,17 @@ import java.util.Date;
  *
  */
 public class FormIdStruct {
+  // keeps the IN clause well under SQLite's bind argument limit
+  static final int MAX_BATCH_QUERY_ARGS = 500;
+
+  /**
+   * A query against the forms provider. Separated from the ContentResolver so that the
+   * batching can be exercised without the provider.
+   */
+  interface FormsQuery {
+    Cursor query(Uri uri, String selection, String[] selectionArgs);
+  }
+
   public final Uri formUri;
   public final File formDefFile;
   public final String formPath;
@@ -63,35 +81,99 @@ public class FormIdStruct {
     this.lastDownloadDate = original.lastDownloadDate;
   }
 
+  /**
+   * Resolve a form URI. Results are cached process-wide until the forms provider reports a
+   * change (or {@link #invalidateCache()} is called), so repeatedly opening the same form
+   * does not query the provider each time.
+   *
+   * @param resolver
+   * @param formUri
+   * @return the FormIdStruct or null if the form does not exist
+   */
   public static final FormIdStruct retrieveFormIdStruct(ContentResolver resolver, Uri formUri) {
     if (formUri == null) {
       return null;
     }
+    return FormIdStructCache.get(resolver, formUri);
+  }
+
+  /**
+   * Resolve several form URIs of the same appName with a single forms provider query.
+   * Cached values are used where available; only the remaining URIs are queried.
+   *
+   * @param resolver
+   * @param formUris form URIs (.../appName/tableId/formId), all for the same appName
+   * @return the FormIdStruct of each URI that resolved to a form. URIs that do not
+   * resolve are absent from the map.
+   */
+  public static final Map<Uri, FormIdStruct> retrieveFormIdStructs(ContentResolver resolver,
+      Collection<Uri> formUris) {
+    String appName = null;
+    for (Uri formUri : formUris) {
+      String uriAppName = FormsColumns.extractAppNameFromFormsUri(formUri);
+      if (appName == null) {
+        appName = uriAppName;
+      } else if (!appName.equals(uriAppName)) {
+        throw new IllegalArgumentException(
+            "retrieveFormIdStructs: all form URIs must be for the same appName");
+      }
+    }
+    if (appName == null) {
+      return new HashMap<Uri, FormIdStruct>();
+    }
+    return FormIdStructCache.getAll(resolver, appName, formUris);
+  }
+
+  /**
+   * Discard all cached FormIdStruct values, e.g., when a form's DATE is seen to change.
+   */
+  public static void invalidateCache() {
+    FormIdStructCache.invalidate();
+  }
+
+  // builds the FormIdStruct for the cursor's current row
+  private static FormIdStruct fromCursor(String appName, Uri formUri, Cursor c) {
+    int idxTableId = c.getColumnIndex(FormsColumns.TABLE_ID);
+    int idxFormId = c.getColumnIndex(FormsColumns.FORM_ID);
+    int idxFormVersion = c.getColumnIndex(FormsColumns.FORM_VERSION);
+    int idxDate = c.getColumnIndex(FormsColumns.DATE);
+
+    String tableId = CursorUtils.getIndexAsString(c, idxTableId);
+    String formId = CursorUtils.getIndexAsString(c, idxFormId);
+    String formVersion = CursorUtils.getIndexAsString(c, idxFormVersion);
+    Long timestamp = CursorUtils.getIndexAsType(c, Long.class, idxDate);
+
+    File formDirectory = new File( ODKFileUtils.getFormFolder(appName, tableId, formId) );
+    File formDefJsonFile = new File(formDirectory, ODKFileUtils.FORMDEF_JSON_FILENAME);
+
+    FormIdStruct newForm = new FormIdStruct(formUri, formDefJsonFile,
+        ODKFileUtils.getRelativeFormPath(appName, formDefJsonFile),
+        formId, formVersion, tableId,
+        (timestamp == null) ? null : new Date(timestamp));
+    return newForm;
+  }
+
+  private static FormsQuery asFormsQuery(final ContentResolver resolver) {
+    return new FormsQuery() {
+      @Override
+      public Cursor query(Uri uri, String selection, String[] selectionArgs) {
+        return resolver.query(uri, null, selection, selectionArgs, null);
+      }
+    };
+  }
+
+  static FormIdStruct queryFormIdStruct(ContentResolver resolver, Uri formUri) {
+    return queryFormIdStruct(asFormsQuery(resolver), formUri);
+  }
+
+  private static FormIdStruct queryFormIdStruct(FormsQuery query, Uri formUri) {
     String appName = FormsColumns.extractAppNameFromFormsUri(formUri);
     Cursor c = null;
     try {
-      c = resolver.query(formUri, null, null, null, null);
+      c = query.query(formUri, null, null);
       if (c != null && c.getCount() == 1) {
-        int idxTableId = c.getColumnIndex(FormsColumns.TABLE_ID);
-        int idxFormId = c.getColumnIndex(FormsColumns.FORM_ID);
-        int idxFormVersion = c.getColumnIndex(FormsColumns.FORM_VERSION);
-        int idxDate = c.getColumnIndex(FormsColumns.DATE);
-
         c.moveToFirst();
-
-        String tableId = CursorUtils.getIndexAsString(c, idxTableId);
-        String formId = CursorUtils.getIndexAsString(c, idxFormId);
-        String formVersion = CursorUtils.getIndexAsString(c, idxFormVersion);
-        Long timestamp = CursorUtils.getIndexAsType(c, Long.class, idxDate);
-        
-        File formDirectory = new File( ODKFileUtils.getFormFolder(appName, tableId, formId) );
-        File formDefJsonFile = new File(formDirectory, ODKFileUtils.FORMDEF_JSON_FILENAME);
-
-        FormIdStruct newForm = new FormIdStruct(formUri, formDefJsonFile,
-            ODKFileUtils.getRelativeFormPath(appName, formDefJsonFile), 
-            formId, formVersion, tableId,
-            (timestamp == null) ? null : new Date(timestamp));
-        return newForm;
+        return fromCursor(appName, formUri, c);
       }
     } finally {
       if (c != null) {
@@ -100,4 +182,70 @@ public class FormIdStruct {
     }
     return null;
   }
+
+  static Map<Uri, FormIdStruct> queryFormIdStructs(ContentResolver resolver, String appName,
+      Collection<Uri> formUris) {
+    return queryFormIdStructs(asFormsQuery(resolver), appName, formUris);
+  }
+
+  /**
+   * Resolve fully qualified form URIs with one IN query per MAX_BATCH_QUERY_ARGS formIds,
+   * matching the returned rows back to the URIs by tableId and formId.
+   */
+  static Map<Uri, FormIdStruct> queryFormIdStructs(FormsQuery query, String appName,
+      Collection<Uri> formUris) {
+    HashMap<Uri, FormIdStruct> resolved = new HashMap<Uri, FormIdStruct>();
+
+    // index the requested URIs by tableId/formId
+    HashMap<String, Uri> requested = new HashMap<String, Uri>();
+    LinkedHashSet<String> uniqueFormIds = new LinkedHashSet<String>();
+    for (Uri formUri : formUris) {
+      List<String> segments = formUri.getPathSegments();
+      if (segments == null || segments.size() < 3) {
+        // not fully qualified; let the provider interpret it
+        FormIdStruct form = queryFormIdStruct(query, formUri);
+        if (form != null) {
+          resolved.put(formUri, form);
+        }
+        continue;
+      }
+      requested.put(segments.get(1) + "/" + segments.get(2), formUri);
+      uniqueFormIds.add(segments.get(2));
+    }
+    ArrayList<String> formIds = new ArrayList<String>(uniqueFormIds);
+
+    Uri appFormsUri = Uri.withAppendedPath(FormsProviderAPI.CONTENT_URI, appName);
+    for (int start = 0; start < formIds.size(); start += MAX_BATCH_QUERY_ARGS) {
+      List<String> batch = formIds.subList(start,
+          Math.min(formIds.size(), start + MAX_BATCH_QUERY_ARGS));
+
+      StringBuilder b = new StringBuilder();
+      b.append(FormsColumns.FORM_ID).append(" IN (");
+      for (int i = 0; i < batch.size(); ++i) {
+        b.append((i == 0) ? "?" : ",?");
+      }
+      b.append(")");
+
+      Cursor c = null;
+      try {
+        c = query.query(appFormsUri, b.toString(), batch.toArray(new String[batch.size()]));
+        if (c != null && c.moveToFirst()) {
+          int idxTableId = c.getColumnIndex(FormsColumns.TABLE_ID);
+          int idxFormId = c.getColumnIndex(FormsColumns.FORM_ID);
+          do {
+            Uri formUri = requested.get(CursorUtils.getIndexAsString(c, idxTableId) + "/" +
+                CursorUtils.getIndexAsString(c, idxFormId));
+            if (formUri != null) {
+              resolved.put(formUri, fromCursor(appName, formUri, c));
+            }
+          } while (c.moveToNext());
+        }
+      } finally {
+        if (c != null) {
+          c.close();
+        }
+      }
+    }
+    return resolved;
+  }
 }
\ No newline at end of file
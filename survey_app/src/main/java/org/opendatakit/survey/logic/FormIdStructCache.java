@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+import org.opendatakit.provider.FormsProviderAPI;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of FormIdStruct instances keyed by form URI.
+ *
+ * The whole cache is discarded whenever the forms provider reports a change. Each
+ * invalidation bumps a generation counter so that a query that was in flight when the change
+ * arrived does not re-populate the cache with a stale result.
+ */
+final class FormIdStructCache {
+
+  private static final HashMap<Uri, FormIdStruct> cache = new HashMap<Uri, FormIdStruct>();
+  private static long generation = 0L;
+  private static ContentObserver observer = null;
+
+  private FormIdStructCache() {
+  }
+
+  private static void registerObserver(ContentResolver resolver) {
+    if (observer != null) {
+      return;
+    }
+    // no handler: onChange is invoked on a binder thread
+    observer = new ContentObserver(null) {
+      @Override
+      public void onChange(boolean selfChange) {
+        invalidate();
+      }
+    };
+    resolver.registerContentObserver(FormsProviderAPI.CONTENT_URI, true, observer);
+  }
+
+  /**
+   * Return the FormIdStruct for the formUri, querying the forms provider on a miss.
+   *
+   * @param resolver
+   * @param formUri
+   * @return the FormIdStruct or null if the form does not exist
+   */
+  static FormIdStruct get(ContentResolver resolver, Uri formUri) {
+    long queryGeneration;
+    synchronized (FormIdStructCache.class) {
+      registerObserver(resolver);
+      FormIdStruct cached = cache.get(formUri);
+      if (cached != null) {
+        return cached;
+      }
+      queryGeneration = generation;
+    }
+
+    FormIdStruct form = FormIdStruct.queryFormIdStruct(resolver, formUri);
+
+    synchronized (FormIdStructCache.class) {
+      if (form != null && queryGeneration == generation) {
+        cache.put(formUri, form);
+      }
+    }
+    return form;
+  }
+
+  /**
+   * Return the FormIdStructs for several form URIs of one appName. Cache misses are
+   * resolved together with a single forms provider query.
+   *
+   * @param resolver
+   * @param appName
+   * @param formUris
+   * @return the resolved forms; URIs that do not resolve are absent
+   */
+  static Map<Uri, FormIdStruct> getAll(ContentResolver resolver, String appName,
+      Collection<Uri> formUris) {
+    HashMap<Uri, FormIdStruct> resolved = new HashMap<Uri, FormIdStruct>();
+    ArrayList<Uri> misses = new ArrayList<Uri>();
+    long queryGeneration;
+    synchronized (FormIdStructCache.class) {
+      registerObserver(resolver);
+      for (Uri formUri : formUris) {
+        FormIdStruct cached = cache.get(formUri);
+        if (cached != null) {
+          resolved.put(formUri, cached);
+        } else {
+          misses.add(formUri);
+        }
+      }
+      queryGeneration = generation;
+    }
+
+    if (!misses.isEmpty()) {
+      Map<Uri, FormIdStruct> queried = FormIdStruct.queryFormIdStructs(resolver, appName, misses);
+
+      synchronized (FormIdStructCache.class) {
+        if (queryGeneration == generation) {
+          cache.putAll(queried);
+        }
+      }
+      resolved.putAll(queried);
+    }
+    return resolved;
+  }
+
+  static synchronized void invalidate() {
+    ++generation;
+    cache.clear();
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import org.opendatakit.database.service.DbHandle;
+import org.opendatakit.database.service.UserDbInterface;
+import org.opendatakit.logging.WebLogger;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Speculatively runs the queries of the screens the user is likely to visit next and parks
+ * the results in the QueryResultCache.
+ *
+ * The query definitions of a form live in its javascript, often with selection arguments
+ * computed at run time, so they cannot be derived from the screenPath alone. Instead, while
+ * a form is open, the prefetcher records the queries each screen issues and which screens
+ * have followed each screen. When a screen is entered, the recorded queries of its likely
+ * successors are run on a background thread. This pays off when
+ * screens are revisited: back navigation, repeat groups, and moving back and forth between
+ * screens with choice lists or linked tables. The recordings are discarded when the form
+ * changes.
+ *
+ * The prefetch uses its own DbHandle, so it sees only committed data. Nothing is prefetched
+ * while a handle of the form has uncommitted writes; the form's own queries on such a handle
+ * bypass the cache in any case.
+ */
+public final class QueryPrefetcher implements QueryResultCache.QueryListener {
+
+  private static final String t = QueryPrefetcher.class.getSimpleName();
+
+  private static final int MAX_SCREENS = 32;
+  private static final int MAX_QUERIES_PER_SCREEN = 8;
+  private static final int MAX_SUCCESSORS = 2;
+
+  private static final class RecordedQuery {
+    final Method method;
+    final Object[] args;
+
+    RecordedQuery(Method method, Object[] args) {
+      this.method = method;
+      this.args = args;
+    }
+  }
+
+  private static <K, V> LinkedHashMap<K, V> newLruMap(final int maxSize) {
+    return new LinkedHashMap<K, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  private final QueryResultCache cache;
+
+  // guarded by this
+  private final LinkedHashMap<String, LinkedHashMap<Object, RecordedQuery>> queriesByScreen =
+      newLruMap(MAX_SCREENS);
+  private final LinkedHashMap<String, LinkedHashSet<String>> successors = newLruMap(MAX_SCREENS);
+  private String currentScreen = null;
+  // bumped by reset() so that queued prefetches for the previous form are skipped
+  private long formGeneration = 0L;
+
+  public QueryPrefetcher(QueryResultCache cache) {
+    this.cache = cache;
+    cache.setQueryListener(this);
+  }
+
+  @Override
+  public synchronized void queryIssued(Object queryKey, Method method, Object[] args) {
+    if (currentScreen == null) {
+      return;
+    }
+    LinkedHashMap<Object, RecordedQuery> queries = queriesByScreen.get(currentScreen);
+    if (queries == null) {
+      queries = newLruMap(MAX_QUERIES_PER_SCREEN);
+      queriesByScreen.put(currentScreen, queries);
+    }
+    queries.put(queryKey, new RecordedQuery(method, args));
+  }
+
+  /**
+   * Discard everything learned about the previous form.
+   */
+  public synchronized void reset() {
+    ++formGeneration;
+    queriesByScreen.clear();
+    successors.clear();
+    currentScreen = null;
+  }
+
+  /**
+   * Record the transition to screenPath and prefetch the queries of the screens that have
+   * followed it before.
+   *
+   * @param appName
+   * @param db         the unwrapped database; nothing is prefetched if null
+   * @param screenPath
+   */
+  public void screenChanged(final String appName, final UserDbInterface db, String screenPath) {
+    final ArrayList<RecordedQuery> prefetch = new ArrayList<RecordedQuery>();
+    final long generation;
+    synchronized (this) {
+      if (screenPath == null || screenPath.equals(currentScreen)) {
+        return;
+      }
+      if (currentScreen != null) {
+        LinkedHashSet<String> next = successors.get(currentScreen);
+        if (next == null) {
+          next = new LinkedHashSet<String>();
+          successors.put(currentScreen, next);
+        }
+        // most recent successor last
+        next.remove(screenPath);
+        next.add(screenPath);
+        if (next.size() > MAX_SUCCESSORS) {
+          Iterator<String> it = next.iterator();
+          it.next();
+          it.remove();
+        }
+      }
+      currentScreen = screenPath;
+
+      // the form is about to issue the queries of screenPath itself
+      LinkedHashSet<String> next = successors.get(screenPath);
+      if (next != null) {
+        for (String nextScreen : next) {
+          addQueries(prefetch, nextScreen);
+        }
+      }
+      generation = formGeneration;
+    }
+
+    if (db == null || prefetch.isEmpty() || cache.hasPendingWrites()) {
+      return;
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        prefetch(appName, db, prefetch, generation);
+      }
+    });
+  }
+
+  private void addQueries(ArrayList<RecordedQuery> prefetch, String screenPath) {
+    LinkedHashMap<Object, RecordedQuery> queries = queriesByScreen.get(screenPath);
+    if (queries != null) {
+      prefetch.addAll(queries.values());
+    }
+  }
+
+  private synchronized boolean isCurrent(long generation) {
+    return generation == formGeneration;
+  }
+
+  private void prefetch(String appName, UserDbInterface db, ArrayList<RecordedQuery> queries,
+      long generation) {
+    if (!isCurrent(generation)) {
+      return;
+    }
+    DbHandle dbHandle = null;
+    int executed = 0;
+    try {
+      dbHandle = db.openDatabase(appName);
+      for (RecordedQuery query : queries) {
+        if (!isCurrent(generation) || cache.hasPendingWrites()) {
+          break;
+        }
+        if (cache.prefetch(db, dbHandle, query.method, query.args)) {
+          ++executed;
+        }
+      }
+    } catch (Throwable e) {
+      // speculative; the form will issue the query itself
+      WebLogger.getLogger(appName).w(t, "prefetch: abandoned " + e.toString());
+    } finally {
+      if (dbHandle != null) {
+        try {
+          db.closeDatabase(appName, dbHandle);
+        } catch (Exception e) {
+          WebLogger.getLogger(appName).printStackTrace(e);
+        }
+      }
+    }
+    WebLogger.getLogger(appName).d(t, "prefetch: ran " + executed + " of " + queries.size()
+        + " queries");
+  }
+}
@@ -0,0 +1,627 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
+import android.util.LruCache;
+import org.opendatakit.database.service.DbHandle;
+import org.opendatakit.database.service.UserDbInterface;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Memory cache of the query results returned to the odkData executor.
+ *
+ * ExecutorProcessor obtains its database through the activity and runs its queries
+ * internally, so SurveyDataExecutorProcessor cannot intercept them directly. Instead, the
+ * activity hands out a UserDbInterface wrapped by this cache. Calls to the queries listed in
+ * CACHEABLE_QUERIES are answered from memory when the same method was invoked with equal
+ * arguments (ignoring the DbHandle). Results are kept in parceled form and every hit
+ * returns a fresh copy, so callers cannot alter what later callers see.
+ *
+ * Each result is tagged with the table it reads. A query whose SQL may read other tables
+ * (arbitrary SQL, or a selection containing a sub-query or join) is tagged as reading all
+ * tables. The row writes listed in TABLE_WRITES invalidate the results for their table.
+ * Every other method that is not listed as read-only invalidates all results.
+ *
+ * A handle that has written may hold uncommitted changes. Its queries bypass the cache, and
+ * the tables it wrote are invalidated again when it is closed.
+ * Closing a handle that did not write leaves the cache alone; the executor closes its handle
+ * after every request.
+ *
+ * Changes made by other processes (sync, ODK Tables) do not pass through the wrapper. The
+ * owner must call invalidateAll() when it may have missed such changes, and entries expire
+ * after MAX_AGE_MILLISECONDS regardless.
+ */
+public final class QueryResultCache {
+
+  private static final int MAX_BYTES = 4 * 1024 * 1024;
+  private static final int MAX_STATEMENT_SHAPES = 128;
+  private static final long MAX_AGE_MILLISECONDS = 60000L;
+
+  // fragments of SQL that may reach beyond the queried table
+  private static final String[] OTHER_TABLE_SQL = { "select", "join", "from" };
+
+  /**
+   * Where a cacheable query names its table and carries SQL fragments.
+   */
+  private static final class QuerySpec {
+    final int parameterCount;
+    // -1 if the query may read any table
+    final int tableIdIndex;
+    final int[] sqlIndices;
+
+    QuerySpec(int parameterCount, int tableIdIndex, int... sqlIndices) {
+      this.parameterCount = parameterCount;
+      this.tableIdIndex = tableIdIndex;
+      this.sqlIndices = sqlIndices;
+    }
+
+    boolean matches(Method method) {
+      Class<?>[] types = method.getParameterTypes();
+      if (types.length != parameterCount || !DbHandle.class.equals(types[1])) {
+        return false;
+      }
+      if (tableIdIndex != -1 && !String.class.equals(types[tableIdIndex])) {
+        return false;
+      }
+      for (int index : sqlIndices) {
+        if (!String.class.equals(types[index])) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  // the queries the odkData executor issues whose results are cached
+  private static final HashMap<String, QuerySpec> CACHEABLE_QUERIES =
+      new HashMap<String, QuerySpec>();
+
+  // methods the executor calls that neither read table data nor change anything
+  private static final HashSet<String> READ_ONLY_METHODS = new HashSet<String>(Arrays.asList(
+      "openDatabase", "getActiveUser", "getDefaultGroup", "getRolesList", "getUsersList",
+      "getUserDefinedColumns", "getTableMetadata", "getTableDefinitionETag", "hasTableId",
+      "getAllTableIds"));
+
+  // row writes the executor issues; each takes (appName, dbHandle, tableId, ...) and changes
+  // only that table
+  private static final HashSet<String> TABLE_WRITES = new HashSet<String>(Arrays.asList(
+      "insertRowWithId", "updateRowWithId", "deleteRowWithId", "insertCheckpointRowWithId",
+      "deleteAllCheckpointRowsWithId", "deleteLastCheckpointRowWithId",
+      "saveAsCompleteMostRecentCheckpointRowWithId",
+      "saveAsIncompleteMostRecentCheckpointRowWithId"));
+
+  // methods that create or drop tables
+  private static final HashSet<String> SCHEMA_CHANGES = new HashSet<String>(Arrays.asList(
+      "createOrOpenTableWithColumns", "createOrOpenTableWithColumnsAndProperties",
+      "deleteTableAndAllData"));
+
+  static {
+    // simpleQuery(appName, dbHandle, tableId, whereClause, bindArgs, groupBy, having,
+    //     orderByColNames, orderByDirections, limit, offset)
+    CACHEABLE_QUERIES.put("simpleQuery", new QuerySpec(11, 2, 3, 6));
+    // arbitrarySqlQuery(appName, dbHandle, tableId, sqlCommand, bindArgs, limit, offset);
+    // the tableId only selects the access rights, the SQL may read any table
+    CACHEABLE_QUERIES.put("arbitrarySqlQuery", new QuerySpec(7, -1));
+  }
+
+  /**
+   * Told about every query issued through the wrapper, whether or not it was cached.
+   */
+  interface QueryListener {
+    /**
+     * @param queryKey equal for equal queries
+     * @param method
+     * @param args     the DbHandle arguments are replaced by null
+     */
+    void queryIssued(Object queryKey, Method method, Object[] args);
+  }
+
+  private static final class Key {
+    // null if the query may read any table
+    final String tableId;
+    final List<Object> signature;
+    final int hash;
+
+    Key(String tableId, List<Object> signature) {
+      this.tableId = tableId;
+      this.signature = signature;
+      this.hash = signature.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof Key) && ((Key) o).signature.equals(signature);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static final class Entry {
+    final byte[] parceled;
+    final Parcelable.Creator<?> creator;
+    final long created;
+
+    Entry(byte[] parceled, Parcelable.Creator<?> creator) {
+      this.parceled = parceled;
+      this.creator = creator;
+      this.created = SystemClock.elapsedRealtime();
+    }
+
+    boolean isFresh() {
+      return SystemClock.elapsedRealtime() - created < MAX_AGE_MILLISECONDS;
+    }
+
+    Object copy() {
+      Parcel parcel = Parcel.obtain();
+      try {
+        parcel.unmarshall(parceled, 0, parceled.length);
+        parcel.setDataPosition(0);
+        return creator.createFromParcel(parcel);
+      } finally {
+        parcel.recycle();
+      }
+    }
+  }
+
+  // tables written through a handle that has not yet committed, rolled back or closed
+  private static final class PendingWrites {
+    final HashSet<String> tableIds = new HashSet<String>();
+    boolean allTables = false;
+  }
+
+  // guarded by this
+  private final LruCache<Key, Entry> cache = new LruCache<Key, Entry>(MAX_BYTES) {
+    @Override
+    protected int sizeOf(Key key, Entry entry) {
+      return entry.parceled.length;
+    }
+  };
+  private final HashMap<DbHandle, PendingWrites> pendingWrites =
+      new HashMap<DbHandle, PendingWrites>();
+  // bumped by every invalidation so that an in-flight query does not cache a stale result
+  private long generation = 0L;
+  private long hitCount = 0L;
+  private long missCount = 0L;
+  private long bypassCount = 0L;
+
+  // Statement shapes (SQL text and clauses, without bind values) of the queries that reached
+  // the database. SQL is compiled in the database service, so Survey cannot keep compiled
+  // statements itself; these counts show how often a per-connection statement cache there
+  // would be reused.
+  private final LruCache<String, Integer> statementShapes =
+      new LruCache<String, Integer>(MAX_STATEMENT_SHAPES);
+  private long statementReuseCount = 0L;
+  private long statementCompileCount = 0L;
+
+  private UserDbInterface wrappedDb = null;
+  private UserDbInterface wrapper = null;
+
+  private volatile QueryListener queryListener = null;
+
+  void setQueryListener(QueryListener listener) {
+    queryListener = listener;
+  }
+
+  /**
+   * @param db the database to wrap; may be null
+   * @return a UserDbInterface that serves repeated queries from this cache
+   */
+  public synchronized UserDbInterface wrap(final UserDbInterface db) {
+    if (db == null) {
+      return null;
+    }
+    if (db != wrappedDb) {
+      // a new database service binding; nothing cached from the old one is trustworthy
+      invalidateAll();
+      pendingWrites.clear();
+      wrappedDb = db;
+      wrapper = (UserDbInterface) Proxy.newProxyInstance(UserDbInterface.class.getClassLoader(),
+          new Class<?>[] { UserDbInterface.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+              return QueryResultCache.this.invoke(db, method, args);
+            }
+          });
+    }
+    return wrapper;
+  }
+
+  public synchronized void invalidateAll() {
+    ++generation;
+    cache.evictAll();
+  }
+
+  /**
+   * Forget the statement shapes; their compiled statements do not survive a schema change.
+   */
+  private synchronized void invalidateStatements() {
+    statementShapes.evictAll();
+  }
+
+  // caller holds the lock
+  private void invalidateTable(String tableId) {
+    ++generation;
+    for (Key key : cache.snapshot().keySet()) {
+      if (key.tableId == null || tableId.equals(key.tableId)) {
+        cache.remove(key);
+      }
+    }
+  }
+
+  private synchronized void invalidate(String tableId) {
+    if (tableId == null) {
+      invalidateAll();
+    } else {
+      invalidateTable(tableId);
+    }
+  }
+
+  private synchronized void recordWrite(DbHandle handle, String tableId) {
+    if (handle == null) {
+      return;
+    }
+    PendingWrites writes = pendingWrites.get(handle);
+    if (writes == null) {
+      writes = new PendingWrites();
+      pendingWrites.put(handle, writes);
+    }
+    if (tableId == null) {
+      writes.allTables = true;
+    } else {
+      writes.tableIds.add(tableId);
+    }
+  }
+
+  // the handle's writes are now committed or rolled back
+  private synchronized void endWrites(DbHandle handle) {
+    PendingWrites writes = (handle == null) ? null : pendingWrites.remove(handle);
+    if (writes == null) {
+      return;
+    }
+    if (writes.allTables) {
+      invalidateAll();
+    } else {
+      for (String tableId : writes.tableIds) {
+        invalidateTable(tableId);
+      }
+    }
+  }
+
+  /**
+   * @return true if some handle may hold uncommitted writes
+   */
+  synchronized boolean hasPendingWrites() {
+    return !pendingWrites.isEmpty();
+  }
+
+  /**
+   * @return a one-line summary of the cache hit rate
+   */
+  public synchronized String getMetrics() {
+    long total = hitCount + missCount;
+    long statements = statementReuseCount + statementCompileCount;
+    return "hits: " + hitCount + " misses: " + missCount + " bypassed: " + bypassCount +
+        " hitRate: " + ((total == 0L) ? 0L : (100L * hitCount / total)) + "%" +
+        " bytes: " + cache.size() +
+        " statementShapes: " + statementShapes.size() + " statementReuseRate: " +
+        ((statements == 0L) ? 0L : (100L * statementReuseCount / statements)) + "%";
+  }
+
+  private static String statementShape(Method method, Object[] args) {
+    StringBuilder b = new StringBuilder(method.getName());
+    for (Object arg : args) {
+      b.append('|');
+      if (arg instanceof String) {
+        b.append((String) arg);
+      } else if (arg instanceof String[]) {
+        b.append(Arrays.toString((String[]) arg));
+      } else if (!(arg instanceof DbHandle)) {
+        // bind values, limits and offsets do not change the compiled statement
+        b.append('?');
+      }
+    }
+    return b.toString();
+  }
+
+  // caller holds the lock
+  private void countStatement(Method method, Object[] args) {
+    String shape = statementShape(method, args);
+    Integer count = statementShapes.get(shape);
+    if (count == null) {
+      ++statementCompileCount;
+      statementShapes.put(shape, 1);
+    } else {
+      ++statementReuseCount;
+      statementShapes.put(shape, count + 1);
+    }
+  }
+
+  /**
+   * @return the spec of a cacheable query, or null if the method is not one
+   */
+  private static QuerySpec getQuerySpec(Method method) {
+    QuerySpec spec = CACHEABLE_QUERIES.get(method.getName());
+    return (spec != null && spec.matches(method)) ? spec : null;
+  }
+
+  /**
+   * @return the table a listed row write changes, or null if the method may change any table
+   */
+  private static String getWrittenTableId(Method method, Object[] args) {
+    if (!TABLE_WRITES.contains(method.getName())) {
+      return null;
+    }
+    Class<?>[] types = method.getParameterTypes();
+    if (types.length < 3 || !DbHandle.class.equals(types[1]) ||
+        !String.class.equals(types[2])) {
+      return null;
+    }
+    return (String) args[2];
+  }
+
+  // by convention the arguments are (appName, dbHandle, ...)
+  private static DbHandle getHandle(Object[] args) {
+    if (args != null && args.length > 1 && args[1] instanceof DbHandle) {
+      return (DbHandle) args[1];
+    }
+    return null;
+  }
+
+  /**
+   * @return the one table the query reads, or null if it may read others
+   */
+  private static String getQueriedTableId(QuerySpec spec, Object[] args) {
+    if (spec.tableIdIndex == -1) {
+      return null;
+    }
+    for (int index : spec.sqlIndices) {
+      if (args[index] != null) {
+        String sql = ((String) args[index]).toLowerCase(Locale.US);
+        for (String fragment : OTHER_TABLE_SQL) {
+          if (sql.contains(fragment)) {
+            return null;
+          }
+        }
+      }
+    }
+    return (String) args[spec.tableIdIndex];
+  }
+
+  private static Object keyComponent(Object arg) {
+    if (arg instanceof Object[]) {
+      ArrayList<Object> components = new ArrayList<Object>();
+      for (Object element : (Object[]) arg) {
+        components.add(keyComponent(element));
+      }
+      return components;
+    }
+    if (arg instanceof Parcelable) {
+      // query arguments such as BindArgs and OrderedColumns do not define equals();
+      // their parceled form does
+      Parcel parcel = Parcel.obtain();
+      try {
+        ((Parcelable) arg).writeToParcel(parcel, 0);
+        return ByteBuffer.wrap(parcel.marshall());
+      } finally {
+        parcel.recycle();
+      }
+    }
+    return arg;
+  }
+
+  private static Key buildKey(QuerySpec spec, Method method, Object[] args) {
+    ArrayList<Object> signature = new ArrayList<Object>();
+    signature.add(method.getName());
+    signature.add(Arrays.asList(method.getParameterTypes()));
+    for (Object arg : args) {
+      if (!(arg instanceof DbHandle)) {
+        signature.add(keyComponent(arg));
+      }
+    }
+    return new Key(getQueriedTableId(spec, args), signature);
+  }
+
+  /**
+   * @return the parceled result, or null if the result cannot be copied this way
+   */
+  private static Entry toEntry(Object result) {
+    if (!(result instanceof Parcelable)) {
+      return null;
+    }
+    Parcelable.Creator<?> creator;
+    try {
+      creator = (Parcelable.Creator<?>) result.getClass().getField("CREATOR").get(null);
+    } catch (Exception e) {
+      return null;
+    }
+    Parcel parcel = Parcel.obtain();
+    try {
+      ((Parcelable) result).writeToParcel(parcel, 0);
+      return new Entry(parcel.marshall(), creator);
+    } catch (RuntimeException e) {
+      // e.g., the result holds a binder or file descriptor
+      return null;
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private void store(Key key, Object result, long queryGeneration) {
+    Entry entry = toEntry(result);
+    if (entry == null) {
+      return;
+    }
+    synchronized (this) {
+      if (queryGeneration == generation) {
+        cache.put(key, entry);
+      }
+    }
+  }
+
+  private Object invoke(UserDbInterface db, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      return method.invoke(db, args);
+    }
+
+    DbHandle handle = getHandle(args);
+    String name = method.getName();
+    QuerySpec spec = getQuerySpec(method);
+
+    if (spec != null) {
+      Key key = buildKey(spec, method, args);
+      QueryListener listener = queryListener;
+      if (listener != null) {
+        Object[] recorded = args.clone();
+        for (int i = 0; i < recorded.length; ++i) {
+          if (recorded[i] instanceof DbHandle) {
+            recorded[i] = null;
+          }
+        }
+        listener.queryIssued(key, method, recorded);
+      }
+      long queryGeneration;
+      boolean cacheable;
+      Entry hit = null;
+      synchronized (this) {
+        cacheable = (handle == null) || !pendingWrites.containsKey(handle);
+        if (cacheable) {
+          Entry entry = cache.get(key);
+          if (entry != null && entry.isFresh()) {
+            ++hitCount;
+            hit = entry;
+          } else {
+            ++missCount;
+          }
+        } else {
+          // the handle sees its own uncommitted writes; the cache holds committed data
+          ++bypassCount;
+        }
+        if (hit == null) {
+          countStatement(method, args);
+        }
+        queryGeneration = generation;
+      }
+      if (hit != null) {
+        // entries are immutable, so the copy is made outside the lock
+        return hit.copy();
+      }
+      Object result = invokeTarget(db, method, args);
+      if (cacheable && result != null) {
+        store(key, result, queryGeneration);
+      }
+      return result;
+    }
+
+    if (READ_ONLY_METHODS.contains(name)) {
+      return invokeTarget(db, method, args);
+    }
+
+    if (name.equals("closeDatabase")) {
+      // commits or rolls back whatever the handle wrote
+      try {
+        return invokeTarget(db, method, args);
+      } finally {
+        endWrites(handle);
+      }
+    }
+
+    // any method not listed above may change any table
+    if (SCHEMA_CHANGES.contains(name)) {
+      invalidateStatements();
+    }
+    String tableId = getWrittenTableId(method, args);
+    invalidate(tableId);
+    try {
+      return invokeTarget(db, method, args);
+    } finally {
+      // the write is visible to other handles only once committed; until then, results
+      // read through this handle must not be cached, and this table is invalidated again
+      // when the handle closes
+      recordWrite(handle, tableId);
+      invalidate(tableId);
+    }
+  }
+
+  /**
+   * Run a query recorded by the QueryListener and cache its result, unless a fresh result is
+   * already cached. Used to prefetch results before the form asks for them.
+   *
+   * Nothing is run while any handle may hold uncommitted writes: the prefetch handle would
+   * read the data as it was before them.
+   *
+   * @param db     the unwrapped database
+   * @param handle substituted for the null DbHandle arguments
+   * @param method
+   * @param args   as passed to the QueryListener
+   * @return true if the query was run
+   */
+  boolean prefetch(UserDbInterface db, DbHandle handle, Method method, Object[] args)
+      throws Throwable {
+    QuerySpec spec = getQuerySpec(method);
+    if (spec == null) {
+      return false;
+    }
+    Object[] actual = args.clone();
+    for (int i = 0; i < actual.length; ++i) {
+      if (actual[i] == null && DbHandle.class.equals(method.getParameterTypes()[i])) {
+        actual[i] = handle;
+      }
+    }
+    Key key = buildKey(spec, method, actual);
+    long queryGeneration;
+    synchronized (this) {
+      if (!pendingWrites.isEmpty()) {
+        return false;
+      }
+      Entry entry = cache.get(key);
+      if (entry != null && entry.isFresh()) {
+        return false;
+      }
+      countStatement(method, actual);
+      queryGeneration = generation;
+    }
+    Object result = invokeTarget(db, method, actual);
+    if (result != null) {
+      store(key, result, queryGeneration);
+    }
+    return true;
+  }
+
+  private static Object invokeTarget(UserDbInterface db, Method method, Object[] args)
+      throws Throwable {
+    try {
+      return method.invoke(db, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import android.os.Looper;
+import org.opendatakit.logging.WebLogger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * FIFO channel of odkData response JSON waiting to be picked up by the WebView.
+ *
+ * Each response is tagged with a sequence number and its size is accounted for. When the
+ * WebView falls behind (too many responses or too many characters queued), a producer on a
+ * background thread is held back until the WebView catches up or a timeout passes. Responses
+ * are never dropped -- the javascript callback of a dropped response would never fire -- so
+ * after the timeout the response is queued anyway and counted as an overflow.
+ *
+ * A Listener can be told of every change, e.g. to keep a copy of the queue on disk.
+ *
+ * All methods are thread-safe.
+ */
+public final class ResponseQueue {
+
+  private static final String t = ResponseQueue.class.getSimpleName();
+
+  // producers wait while either limit is exceeded
+  static final int MAX_QUEUED_RESPONSES = 64;
+  static final long MAX_QUEUED_BYTES = 8L * 1024L * 1024L;
+
+  private static final long BACKPRESSURE_WAIT_MILLISECONDS = 2000L;
+
+  private static final class Response {
+    final long requestId;
+    final String json;
+    final long bytes;
+
+    Response(long requestId, String json) {
+      this.requestId = requestId;
+      this.json = json;
+      // in-memory size of the UTF-16 characters
+      this.bytes = 2L * json.length();
+    }
+  }
+
+  /**
+   * Told of each change to the queue, in queue order. Called with the queue's lock held, so
+   * an implementation must not block.
+   */
+  public interface Listener {
+    void responseAdded(String json);
+
+    /**
+     * @param count number of responses removed from the head of the queue
+     */
+    void responsesRemoved(int count);
+  }
+
+  private final ArrayDeque<Response> queue = new ArrayDeque<Response>();
+  private Listener listener = null;
+  private long queuedBytes = 0L;
+  private long nextRequestId = 1L;
+
+  // metrics
+  private long enqueuedCount = 0L;
+  private long deliveredCount = 0L;
+  private int maxQueuedCount = 0;
+  private long maxQueuedBytes = 0L;
+  private long backpressureCount = 0L;
+  private long backpressureMilliseconds = 0L;
+  private long overflowCount = 0L;
+
+  private boolean isFull() {
+    return queue.size() >= MAX_QUEUED_RESPONSES || queuedBytes >= MAX_QUEUED_BYTES;
+  }
+
+  private void add(String json) {
+    Response response = new Response(nextRequestId++, json);
+    queue.addLast(response);
+    queuedBytes += response.bytes;
+    ++enqueuedCount;
+    maxQueuedCount = Math.max(maxQueuedCount, queue.size());
+    maxQueuedBytes = Math.max(maxQueuedBytes, queuedBytes);
+    if (listener != null) {
+      listener.responseAdded(json);
+    }
+  }
+
+  private Response remove() {
+    Response response = queue.pollFirst();
+    if (response != null) {
+      queuedBytes -= response.bytes;
+      ++deliveredCount;
+      // wake any producer held back by backpressure
+      notifyAll();
+    }
+    return response;
+  }
+
+  /**
+   * Append a response. If the queue is full and this is not the UI thread, waits for the
+   * WebView to drain it for a bounded time.
+   *
+   * @param appName used for logging
+   * @param json
+   * @return the request id assigned to the response
+   */
+  public synchronized long offer(String appName, String json) {
+    if (isFull() && Looper.myLooper() != Looper.getMainLooper()) {
+      ++backpressureCount;
+      long start = System.currentTimeMillis();
+      long remaining = BACKPRESSURE_WAIT_MILLISECONDS;
+      try {
+        while (isFull() && remaining > 0L) {
+          wait(remaining);
+          remaining = BACKPRESSURE_WAIT_MILLISECONDS - (System.currentTimeMillis() - start);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      backpressureMilliseconds += System.currentTimeMillis() - start;
+    }
+    if (isFull()) {
+      ++overflowCount;
+      WebLogger.getLogger(appName).w(t, "offer: WebView is not keeping up -- " + getMetrics());
+    }
+    long requestId = nextRequestId;
+    add(json);
+    return requestId;
+  }
+
+  /**
+   * @return the oldest response, or null if there is none
+   */
+  public synchronized String poll() {
+    Response response = remove();
+    if (response == null) {
+      return null;
+    }
+    if (listener != null) {
+      listener.responsesRemoved(1);
+    }
+    return response.json;
+  }
+
+  /**
+   * Remove the oldest responses whose combined size fits within the byte budget. The oldest
+   * response is always returned, even if it alone exceeds the budget.
+   *
+   * @param maxBytes budget, counted as for MAX_QUEUED_BYTES
+   * @return the responses, oldest first; empty if there are none
+   */
+  public synchronized List<String> pollBatch(long maxBytes) {
+    ArrayList<String> batch = new ArrayList<String>();
+    long batchBytes = 0L;
+    Response next;
+    while ((next = queue.peekFirst()) != null) {
+      if (!batch.isEmpty() && batchBytes + next.bytes > maxBytes) {
+        break;
+      }
+      remove();
+      batch.add(next.json);
+      batchBytes += next.bytes;
+    }
+    if (listener != null && !batch.isEmpty()) {
+      listener.responsesRemoved(batch.size());
+    }
+    return batch;
+  }
+
+  /**
+   * @param listener told of every later change; null to stop
+   */
+  public synchronized void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  public synchronized boolean isEmpty() {
+    return queue.isEmpty();
+  }
+
+  /**
+   * @return the queued responses, oldest first, without removing them
+   */
+  public synchronized List<String> snapshot() {
+    ArrayList<String> values = new ArrayList<String>(queue.size());
+    for (Response response : queue) {
+      values.add(response.json);
+    }
+    return values;
+  }
+
+  /**
+   * Re-queue responses saved by a previous activity instance. Never waits. A listener is
+   * told of the responses like any others.
+   *
+   * @param responses oldest first
+   */
+  public synchronized void restore(Collection<String> responses) {
+    for (String json : responses) {
+      if (json != null) {
+        add(json);
+      }
+    }
+  }
+
+  /**
+   * @return a one-line summary of the queue metrics
+   */
+  public synchronized String getMetrics() {
+    return "queued: " + queue.size() + " (" + queuedBytes + " bytes)" +
+        " enqueued: " + enqueuedCount +
+        " delivered: " + deliveredCount +
+        " maxQueued: " + maxQueuedCount + " (" + maxQueuedBytes + " bytes)" +
+        " backpressure: " + backpressureCount + " (" + backpressureMilliseconds + " ms)" +
+        " overflows: " + overflowCount;
+  }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import android.os.BadParcelableException;
+import android.os.Parcel;
+import android.os.Parcelable;
+import org.opendatakit.logging.WebLoggerIf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The stack of sections the user has navigated through in a form, each with the history of
+ * screens visited within it.
+ *
+ * A screenPath is "sectionName/screen". The section names and any non-numeric screen names
+ * are interned in a table owned by the history, and each screen is stored as a pair of ints
+ * (section name id, screen index) plus its controller state in parallel arrays. Screens are
+ * kept oldest first, grouped by section; the last screen of a section is its current screen.
+ * Pushes and pops work at the end of the arrays and do not allocate unless the arrays grow.
+ *
+ * toByteArray() writes this representation as is; it is the form that is parceled and that
+ * the activity keeps in its SessionStateStore.
+ *
+ * Not thread-safe; used on the UI and javascript bridge threads as the activity was before.
+ */
+public final class SectionScreenHistory implements Parcelable {
+
+  // section id of a null screenPath
+  private static final int NULL_PATH = -1;
+  // screen of a screenPath without a '/'; a non-numeric screen is stored as -(2 + name id)
+  private static final int NO_SCREEN = -1;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  // bump whenever the layout written by toByteArray() changes
+  private static final int FORMAT_VERSION = 1;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // interned section and screen names, by id
+  private final ArrayList<String> names = new ArrayList<String>();
+  private final HashMap<String, Integer> nameIds = new HashMap<String, Integer>();
+
+  // one entry per screen
+  private int[] sections;
+  private int[] screens;
+  private String[] states;
+  private int size = 0;
+
+  // index of the first screen of each section
+  private int[] sectionStarts;
+  private int sectionCount = 0;
+
+  // screenPath of the current screen; rebuilt after a pop
+  private String currentPath = null;
+  private boolean currentPathKnown = true;
+
+  public SectionScreenHistory() {
+    this(INITIAL_CAPACITY, INITIAL_CAPACITY);
+  }
+
+  private SectionScreenHistory(int capacity, int sectionCapacity) {
+    sections = new int[capacity];
+    screens = new int[capacity];
+    states = new String[capacity];
+    sectionStarts = new int[sectionCapacity];
+  }
+
+  private int intern(String name) {
+    Integer id = nameIds.get(name);
+    if (id == null) {
+      id = names.size();
+      names.add(name);
+      nameIds.put(name, id);
+    }
+    return id;
+  }
+
+  // a canonical non-negative decimal is stored as its value; anything else by name
+  private int screenOf(String screenPath, int start) {
+    int length = screenPath.length();
+    if (start < length && length - start <= 9 &&
+        (screenPath.charAt(start) != '0' || length - start == 1)) {
+      int index = 0;
+      int i = start;
+      for (; i < length; ++i) {
+        char c = screenPath.charAt(i);
+        if (c < '0' || c > '9') {
+          break;
+        }
+        index = 10 * index + (c - '0');
+      }
+      if (i == length) {
+        return index;
+      }
+    }
+    return -2 - intern(screenPath.substring(start));
+  }
+
+  private String pathOf(int i) {
+    if (sections[i] == NULL_PATH) {
+      return null;
+    }
+    String section = names.get(sections[i]);
+    int screen = screens[i];
+    if (screen == NO_SCREEN) {
+      return section;
+    }
+    if (screen >= 0) {
+      return section + "/" + screen;
+    }
+    return section + "/" + names.get(-2 - screen);
+  }
+
+  // true if screenPath names the given section: "section" or "section/..."
+  private boolean inSection(String screenPath, int section) {
+    if (section == NULL_PATH) {
+      return false;
+    }
+    String name = names.get(section);
+    int length = name.length();
+    return screenPath.regionMatches(0, name, 0, length) &&
+        (screenPath.length() == length || screenPath.charAt(length) == '/');
+  }
+
+  private void startSection() {
+    if (sectionCount == sectionStarts.length) {
+      sectionStarts = Arrays.copyOf(sectionStarts, 2 * sectionCount);
+    }
+    sectionStarts[sectionCount++] = size;
+  }
+
+  private void append(int section, int screen, String state) {
+    if (size == sections.length) {
+      sections = Arrays.copyOf(sections, 2 * size);
+      screens = Arrays.copyOf(screens, 2 * size);
+      states = Arrays.copyOf(states, 2 * size);
+    }
+    sections[size] = section;
+    screens[size] = screen;
+    states[size] = state;
+    ++size;
+  }
+
+  private void appendPath(String screenPath, String state) {
+    if (screenPath == null) {
+      append(NULL_PATH, NO_SCREEN, state);
+      return;
+    }
+    int slash = screenPath.indexOf('/');
+    if (slash < 0) {
+      append(intern(screenPath), NO_SCREEN, state);
+    } else {
+      append(intern(screenPath.substring(0, slash)), screenOf(screenPath, slash + 1), state);
+    }
+  }
+
+  private void truncate(int newSize) {
+    Arrays.fill(states, newSize, size, null);
+    size = newSize;
+    currentPathKnown = false;
+  }
+
+  public boolean isEmpty() {
+    return sectionCount == 0;
+  }
+
+  public void clear() {
+    truncate(0);
+    sectionCount = 0;
+    names.clear();
+    nameIds.clear();
+  }
+
+  /**
+   * Replace the current screen if screenPath is in the current section; otherwise start a new
+   * section with screenPath as its current screen.
+   *
+   * @param screenPath not null
+   * @param state
+   */
+  public void setScreen(String screenPath, String state) {
+    int last = size - 1;
+    if (sectionCount == 0 || screens[last] == NO_SCREEN || !inSection(screenPath, sections[last])) {
+      startSection();
+      appendPath(screenPath, state);
+    } else {
+      int length = names.get(sections[last]).length();
+      screens[last] = (screenPath.length() == length) ? NO_SCREEN : screenOf(screenPath,
+          length + 1);
+      states[last] = state;
+    }
+    currentPath = screenPath;
+    currentPathKnown = true;
+  }
+
+  /**
+   * Save the current screen in the history of the current section.
+   *
+   * @return false if there is no current section
+   */
+  public boolean pushScreen() {
+    if (sectionCount == 0) {
+      return false;
+    }
+    int last = size - 1;
+    append(sections[last], screens[last], states[last]);
+    return true;
+  }
+
+  /**
+   * @return the screenPath of the current screen, or null if there are no sections
+   */
+  public String getScreenPath() {
+    if (sectionCount == 0) {
+      return null;
+    }
+    if (!currentPathKnown) {
+      currentPath = pathOf(size - 1);
+      currentPathKnown = true;
+    }
+    return currentPath;
+  }
+
+  /**
+   * @return the controller state of the current screen, or null if there are no sections
+   */
+  public String getState() {
+    return (sectionCount == 0) ? null : states[size - 1];
+  }
+
+  public boolean hasScreenHistory() {
+    return sectionCount > 1 || (sectionCount == 1 && size > 1);
+  }
+
+  /**
+   * Return to the previous screen of the current section or, if it has none, to the
+   * current screen of the enclosing section.
+   *
+   * @return the screenPath of the new current screen, or null if there are no sections left
+   */
+  public String popScreen() {
+    if (sectionCount == 0) {
+      return null;
+    }
+    if (size - sectionStarts[sectionCount - 1] == 1) {
+      --sectionCount;
+    }
+    truncate(size - 1);
+    return getScreenPath();
+  }
+
+  /**
+   * Discard the current section.
+   *
+   * @return the screenPath of the new current screen, or null if there are no sections left
+   */
+  public String popSection() {
+    if (sectionCount != 0) {
+      truncate(sectionStarts[--sectionCount]);
+    }
+    return getScreenPath();
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = value.getBytes(UTF8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream in, int limit) throws IOException {
+    int length = in.readInt();
+    if (length == -1) {
+      return null;
+    }
+    if (length < 0 || length > limit) {
+      throw new IOException("bad string length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  // every counted item takes at least one byte, so a count can never exceed the data length
+  private static int readCount(DataInputStream in, int limit) throws IOException {
+    int count = in.readInt();
+    if (count < 0 || count > limit) {
+      throw new IOException("bad count " + count);
+    }
+    return count;
+  }
+
+  /**
+   * @return the compact form of the history: the name table once, then the index of the
+   * first screen of each section, then the section id, screen and state of each screen
+   */
+  public byte[] toByteArray() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 16 * size);
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(names.size());
+      for (String name : names) {
+        writeString(out, name);
+      }
+      out.writeInt(sectionCount);
+      for (int s = 0; s < sectionCount; ++s) {
+        out.writeInt(sectionStarts[s]);
+      }
+      out.writeInt(size);
+      for (int i = 0; i < size; ++i) {
+        out.writeInt(sections[i]);
+        out.writeInt(screens[i]);
+        writeString(out, states[i]);
+      }
+      out.flush();
+    } catch (IOException e) {
+      // a ByteArrayOutputStream does not throw
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Rebuild a history from toByteArray(). The data is checked before it is used, so a
+   * truncated or corrupt saved state is rejected rather than producing a history that
+   * fails later.
+   *
+   * @param data
+   * @return the history
+   * @throws IOException if data is not a complete, consistent history
+   */
+  public static SectionScreenHistory fromByteArray(byte[] data) throws IOException {
+    int limit = data.length;
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    if (in.readInt() != FORMAT_VERSION) {
+      throw new IOException("unexpected format version");
+    }
+
+    int nameCount = readCount(in, limit);
+    String[] names = new String[nameCount];
+    for (int n = 0; n < nameCount; ++n) {
+      names[n] = readString(in, limit);
+      if (names[n] == null) {
+        throw new IOException("null name");
+      }
+    }
+
+    int sectionCount = readCount(in, limit);
+    int[] sectionStarts = new int[Math.max(INITIAL_CAPACITY, sectionCount)];
+    for (int s = 0; s < sectionCount; ++s) {
+      sectionStarts[s] = in.readInt();
+    }
+    int size = readCount(in, limit);
+
+    // each section holds at least one screen, and the first holds the first screen
+    if ((sectionCount == 0) != (size == 0) || (sectionCount != 0 && sectionStarts[0] != 0)) {
+      throw new IOException("bad section starts");
+    }
+    for (int s = 1; s < sectionCount; ++s) {
+      if (sectionStarts[s] <= sectionStarts[s - 1] || sectionStarts[s] >= size) {
+        throw new IOException("bad section starts");
+      }
+    }
+
+    SectionScreenHistory history = new SectionScreenHistory(Math.max(INITIAL_CAPACITY, size),
+        sectionStarts.length);
+    for (String name : names) {
+      history.intern(name);
+    }
+    if (history.names.size() != nameCount) {
+      throw new IOException("duplicate name");
+    }
+    System.arraycopy(sectionStarts, 0, history.sectionStarts, 0, sectionCount);
+    history.sectionCount = sectionCount;
+
+    for (int i = 0; i < size; ++i) {
+      int section = in.readInt();
+      int screen = in.readInt();
+      if (section < NULL_PATH || section >= nameCount ||
+          (screen < NO_SCREEN && -2 - screen >= nameCount)) {
+        throw new IOException("bad screen " + i);
+      }
+      history.sections[i] = section;
+      history.screens[i] = screen;
+      history.states[i] = readString(in, limit);
+    }
+    history.size = size;
+    history.currentPathKnown = false;
+    return history;
+  }
+
+  public void dump(WebLoggerIf l, String t) {
+    if (sectionCount == 0) {
+      l.d(t, "sectionScreenStateHistory EMPTY");
+      return;
+    }
+    for (int s = sectionCount - 1; s >= 0; --s) {
+      int start = sectionStarts[s];
+      int current = ((s + 1 < sectionCount) ? sectionStarts[s + 1] : size) - 1;
+      l.d(t, "[" + s + "] screenPath: " + pathOf(current));
+      l.d(t, "[" + s + "] state:      " + states[current]);
+      if (current == start) {
+        l.d(t, "[" + s + "] history[] EMPTY");
+      }
+      for (int i = current - 1; i >= start; --i) {
+        l.d(t, "[" + s + "] history[" + (i - start) + "] screenPath: " + pathOf(i));
+        l.d(t, "[" + s + "] history[" + (i - start) + "] state:      " + states[i]);
+      }
+    }
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  @Override
+  public void writeToParcel(Parcel dest, int flags) {
+    dest.writeByteArray(toByteArray());
+  }
+
+  public static final Parcelable.Creator<SectionScreenHistory> CREATOR = new Parcelable.Creator<SectionScreenHistory>() {
+    public SectionScreenHistory createFromParcel(Parcel in) {
+      try {
+        return fromByteArray(in.createByteArray());
+      } catch (IOException e) {
+        throw new BadParcelableException(e);
+      }
+    }
+
+    @Override
+    public SectionScreenHistory[] newArray(int size) {
+      SectionScreenHistory[] array = new SectionScreenHistory[size];
+      for (int i = 0; i < size; ++i) {
+        array[i] = null;
+      }
+      return array;
+    }
+  };
+}
@@ -0,0 +1,806 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.logic;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.text.TextUtils;
+import org.opendatakit.logging.WebLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the bulky parts of the Survey session state (session variables, screen history,
+ * queued actions and pending responses) in app-private files instead of the saved instance
+ * state Bundle. Only the store's token is placed in the Bundle.
+ *
+ * The pending responses can run to megabytes, so they are not written when the state is
+ * saved. Instead, once attach() is called, every response added to or removed from the
+ * activity's ResponseQueue is appended to a journal on a background thread as it happens.
+ * Each record is synced before the next one is written. The journal is truncated whenever
+ * the queue drains and rewritten once dead records take up more than MAX_JOURNAL_SLACK_BYTES.
+ * A restore replays it; a record cut short by a process kill is ignored.
+ *
+ * The state lives under files/sessionState/&lt;token&gt;/. Each commit is one generation: the
+ * sections that changed are written to new files named for the generation, and a manifest
+ * naming the file of every section is then written and renamed into place. The manifest rename
+ * is the commit point, so a restore sees all sections of one commit, never a mix of two.
+ * commit() returns only once the files (and every journal record queued before it) are synced
+ * to disk, so the token is not handed out for state that a process kill could still lose.
+ *
+ * A store created to restore state starts reading it on a background thread immediately;
+ * restore() only waits for whatever is left. The read is bounded by MAX_RESTORE_BYTES.
+ *
+ * State directories are removed when their activity finishes, or when the task they were
+ * saved for is no longer in the recent tasks (the user can no longer return to it).
+ */
+public final class SessionStateStore {
+
+  private static final String t = SessionStateStore.class.getSimpleName();
+
+  private static final String STATE_DIR = "sessionState";
+  private static final String MANIFEST = "manifest.bin";
+  private static final String JOURNAL = "responses.log";
+  private static final String SUFFIX = ".bin";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  // bump whenever the layout of the files changes
+  private static final int STATE_VERSION = 3;
+
+  // journal record types
+  private static final int JOURNAL_ADD = 1;
+  private static final int JOURNAL_REMOVE = 2;
+
+  // the journal is rewritten once its dead records take more than this
+  private static final long MAX_JOURNAL_SLACK_BYTES = 1024L * 1024L;
+
+  // the response queue holds about 8MB of (UTF-16) responses, up to 12MB as UTF-8, plus the
+  // journal slack; anything larger is corrupt
+  static final long MAX_RESTORE_BYTES = 24L * 1024L * 1024L;
+
+  // a directory without a manifest this old was abandoned part way through its first commit
+  private static final long UNCOMMITTED_STATE_MILLISECONDS = TimeUnit.HOURS.toMillis(1);
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  private static boolean staleStatePruned = false;
+
+  private static final class Section {
+    final ArrayList<String> values;
+    final long generation;
+
+    Section(ArrayList<String> values, long generation) {
+      this.values = values;
+      this.generation = generation;
+    }
+  }
+
+  private static final class SavedState {
+    final HashMap<String, Section> sections = new HashMap<String, Section>();
+    final ArrayList<String> responses = new ArrayList<String>();
+  }
+
+  private static final class JournalEntry {
+    final String json;
+    final long bytes;
+
+    JournalEntry(String json, long bytes) {
+      this.json = json;
+      this.bytes = bytes;
+    }
+  }
+
+  private final String appName;
+  private final File stateDir;
+  private final String token;
+  private final int taskId;
+
+  // only touched on the UI thread: the sections of the last commit (or restore)
+  private final HashMap<String, Section> committed = new HashMap<String, Section>();
+  private long committedGeneration = 0L;
+
+  private final Future<SavedState> pendingRead;
+
+  // only touched on the executor: the responses recorded in the journal, oldest first, the
+  // size of their records, and whether the file may no longer match them
+  private final ArrayDeque<JournalEntry> journaled = new ArrayDeque<JournalEntry>();
+  private long journaledBytes = 0L;
+  private boolean journalFailed = false;
+
+  private final ResponseQueue.Listener journalListener = new ResponseQueue.Listener() {
+    @Override
+    public void responseAdded(final String json) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          journalAdded(json);
+        }
+      });
+    }
+
+    @Override
+    public void responsesRemoved(final int count) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          journalRemoved(count);
+        }
+      });
+    }
+  };
+
+  /**
+   * @param context
+   * @param appName   used for logging
+   * @param token     a previously saved token (see getToken()), or a new unique value
+   * @param taskId    the task of the activity; its state is kept while the task exists
+   * @param restoring true if restore() will be called; starts reading the saved state
+   */
+  public SessionStateStore(Context context, String appName, String token, int taskId,
+      boolean restoring) {
+    this.appName = appName;
+    this.token = token;
+    this.taskId = taskId;
+    File root = new File(context.getFilesDir(), STATE_DIR);
+    this.stateDir = new File(root, token);
+    if (restoring) {
+      pendingRead = executor.submit(new Callable<SavedState>() {
+        @Override
+        public SavedState call() {
+          return readState();
+        }
+      });
+    } else {
+      pendingRead = null;
+    }
+    pruneStaleState(context.getApplicationContext(), root, appName, token);
+  }
+
+  /**
+   * @return the value to keep in the saved instance state Bundle
+   */
+  public String getToken() {
+    return token;
+  }
+
+  @SuppressWarnings("deprecation")
+  private static HashSet<Integer> getLiveTaskIds(Context context) {
+    HashSet<Integer> taskIds = new HashSet<Integer>();
+    ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+    for (ActivityManager.AppTask task : am.getAppTasks()) {
+      try {
+        // persistentId is the id reported by Activity.getTaskId()
+        taskIds.add(task.getTaskInfo().persistentId);
+      } catch (IllegalArgumentException e) {
+        // the task went away while we were looking
+      }
+    }
+    return taskIds;
+  }
+
+  private static synchronized void pruneStaleState(final Context context, final File root,
+      final String appName, final String activeToken) {
+    if (staleStatePruned) {
+      return;
+    }
+    staleStatePruned = true;
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        File[] dirs = root.listFiles();
+        if (dirs == null) {
+          return;
+        }
+        HashSet<Integer> liveTaskIds = getLiveTaskIds(context);
+        long cutoff = System.currentTimeMillis() - UNCOMMITTED_STATE_MILLISECONDS;
+        for (File dir : dirs) {
+          if (dir.getName().equals(activeToken)) {
+            continue;
+          }
+          File manifest = new File(dir, MANIFEST);
+          boolean stale;
+          if (manifest.exists()) {
+            Integer dirTaskId = readTaskId(manifest);
+            stale = (dirTaskId == null) || !liveTaskIds.contains(dirTaskId);
+          } else {
+            stale = dir.lastModified() < cutoff;
+          }
+          if (stale) {
+            WebLogger.getLogger(appName).i(t, "pruneStaleState: removing " + dir.getName());
+            deleteDirectory(dir);
+          }
+        }
+      }
+    });
+  }
+
+  private static void deleteDirectory(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private static boolean sameContents(List<String> lhs, List<String> rhs) {
+    if (lhs.size() != rhs.size()) {
+      return false;
+    }
+    for (int i = 0; i < lhs.size(); ++i) {
+      // usually the identical String instances, so this does not compare characters
+      if (!TextUtils.equals(lhs.get(i), rhs.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Durably save the given sections as one generation, replacing everything committed before.
+   * Only sections whose contents changed are rewritten; if none changed, nothing is written.
+   * The pending responses are not a section; they are already in the journal. Waits for the
+   * write and for the journal records queued before it, so call it only from
+   * onSaveInstanceState().
+   *
+   * @param sections keyed by name; the lists are copied
+   * @return true if the token now identifies exactly these sections. If false, the token
+   * must not be saved.
+   */
+  public boolean commit(Map<String, List<String>> sections) {
+    boolean changed = (committedGeneration == 0L) || sections.size() != committed.size();
+    for (Map.Entry<String, List<String>> entry : sections.entrySet()) {
+      Section last = committed.get(entry.getKey());
+      if (last == null || !sameContents(last.values, entry.getValue())) {
+        changed = true;
+        break;
+      }
+    }
+    if (!changed) {
+      // nothing to write, but the journal records queued so far must be on disk
+      return runOnExecutor(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return isJournalSynced();
+        }
+      });
+    }
+
+    final long generation = committedGeneration + 1L;
+    final HashMap<String, Section> next = new HashMap<String, Section>();
+    final HashMap<String, Section> toWrite = new HashMap<String, Section>();
+    for (Map.Entry<String, List<String>> entry : sections.entrySet()) {
+      Section last = committed.get(entry.getKey());
+      if (last != null && sameContents(last.values, entry.getValue())) {
+        next.put(entry.getKey(), last);
+      } else {
+        Section section = new Section(new ArrayList<String>(entry.getValue()), generation);
+        next.put(entry.getKey(), section);
+        toWrite.put(entry.getKey(), section);
+      }
+    }
+
+    boolean success = runOnExecutor(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return writeState(generation, next, toWrite);
+      }
+    });
+    if (success) {
+      committed.clear();
+      committed.putAll(next);
+      committedGeneration = generation;
+    }
+    return success;
+  }
+
+  // runs the task after every journal record queued so far
+  private boolean runOnExecutor(Callable<Boolean> task) {
+    try {
+      return executor.submit(task).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      WebLogger.getLogger(appName).w(t, "commit: interrupted");
+    } catch (ExecutionException e) {
+      WebLogger.getLogger(appName).printStackTrace(e);
+    }
+    return false;
+  }
+
+  /**
+   * Read all sections committed under this store's token. The store must have been created
+   * with restoring = true. The restored contents become the baseline for commit().
+   *
+   * @return the sections, keyed by name; empty if there is no complete, readable commit
+   */
+  public Map<String, ArrayList<String>> restore() {
+    HashMap<String, ArrayList<String>> sections = new HashMap<String, ArrayList<String>>();
+    SavedState state = getSavedState();
+    if (state == null) {
+      return sections;
+    }
+
+    committed.clear();
+    committedGeneration = 0L;
+    for (Map.Entry<String, Section> entry : state.sections.entrySet()) {
+      Section section = entry.getValue();
+      committed.put(entry.getKey(), section);
+      committedGeneration = Math.max(committedGeneration, section.generation);
+      sections.put(entry.getKey(), new ArrayList<String>(section.values));
+    }
+    return sections;
+  }
+
+  private SavedState getSavedState() {
+    if (pendingRead == null) {
+      return null;
+    }
+    try {
+      return pendingRead.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      WebLogger.getLogger(appName).w(t, "getSavedState: interrupted");
+    } catch (ExecutionException e) {
+      WebLogger.getLogger(appName).printStackTrace(e);
+    }
+    return null;
+  }
+
+  /**
+   * Re-queue the responses saved under this store's token (if it was created to restore),
+   * then journal every later change to the queue. Call once, before the WebView can use the
+   * queue.
+   *
+   * @param queue the activity's response queue; empty
+   */
+  public void attach(ResponseQueue queue) {
+    SavedState state = getSavedState();
+    if (state != null) {
+      queue.restore(state.responses);
+    }
+    // the journal already holds the restored responses
+    queue.setListener(journalListener);
+  }
+
+  /**
+   * Stop journaling the queue. Called when the activity is destroyed, so that a late response
+   * given to this instance does not appear in the state restored by the next one.
+   *
+   * @param queue
+   */
+  public void detach(ResponseQueue queue) {
+    queue.setListener(null);
+  }
+
+  /**
+   * Delete everything saved under this store's token. Called when the activity finishes.
+   */
+  public void discard() {
+    committed.clear();
+    committedGeneration = 0L;
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        journaled.clear();
+        journaledBytes = 0L;
+        deleteDirectory(stateDir);
+      }
+    });
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    // writeUTF() is limited to 64k bytes; responses can be far larger
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = value.getBytes(UTF8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream in, long limit) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > limit) {
+      throw new IOException("string of " + length + " bytes exceeds the file");
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  private static String sectionFileName(String section, long generation) {
+    return section + "." + generation + SUFFIX;
+  }
+
+  /**
+   * Write to a temporary file, sync it, and rename it over the target.
+   */
+  private abstract static class AtomicWrite {
+    abstract void write(DataOutputStream out) throws IOException;
+
+    void run(File file) throws IOException {
+      File temp = new File(file.getParentFile(), file.getName() + TEMP_SUFFIX);
+      FileOutputStream fos = new FileOutputStream(temp);
+      boolean renamed = false;
+      try {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        out.writeInt(STATE_VERSION);
+        write(out);
+        out.flush();
+        fos.getFD().sync();
+        out.close();
+        if (!temp.renameTo(file)) {
+          throw new IOException("unable to replace " + file.getName());
+        }
+        renamed = true;
+      } finally {
+        fos.close();
+        if (!renamed) {
+          temp.delete();
+        }
+      }
+    }
+  }
+
+  private boolean writeState(long generation, final Map<String, Section> sections,
+      Map<String, Section> toWrite) {
+    if (!stateDir.exists() && !stateDir.mkdirs()) {
+      WebLogger.getLogger(appName).e(t, "writeState: unable to create " + stateDir.getName());
+      return false;
+    }
+    if (!isJournalSynced()) {
+      return false;
+    }
+    try {
+      for (Map.Entry<String, Section> entry : toWrite.entrySet()) {
+        final ArrayList<String> values = entry.getValue().values;
+        new AtomicWrite() {
+          @Override
+          void write(DataOutputStream out) throws IOException {
+            out.writeInt(values.size());
+            for (String value : values) {
+              writeString(out, value);
+            }
+          }
+        }.run(new File(stateDir, sectionFileName(entry.getKey(), generation)));
+      }
+
+      // the commit point
+      new AtomicWrite() {
+        @Override
+        void write(DataOutputStream out) throws IOException {
+          out.writeInt(taskId);
+          out.writeInt(sections.size());
+          for (Map.Entry<String, Section> entry : sections.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().generation);
+          }
+        }
+      }.run(new File(stateDir, MANIFEST));
+    } catch (IOException e) {
+      WebLogger.getLogger(appName).printStackTrace(e);
+      return false;
+    }
+
+    // files of earlier generations are no longer referenced
+    HashSet<String> referenced = new HashSet<String>();
+    referenced.add(MANIFEST);
+    referenced.add(JOURNAL);
+    for (Map.Entry<String, Section> entry : sections.entrySet()) {
+      referenced.add(sectionFileName(entry.getKey(), entry.getValue().generation));
+    }
+    File[] files = stateDir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        if (!referenced.contains(f.getName())) {
+          f.delete();
+        }
+      }
+    }
+    return true;
+  }
+
+  private static Integer readTaskId(File manifest) {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+      if (in.readInt() != STATE_VERSION) {
+        return null;
+      }
+      return in.readInt();
+    } catch (IOException e) {
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  private SavedState readState() {
+    SavedState state = new SavedState();
+    HashMap<String, Section> sections = state.sections;
+    File manifest = new File(stateDir, MANIFEST);
+    File journal = new File(stateDir, JOURNAL);
+    if (!manifest.exists()) {
+      WebLogger.getLogger(appName).w(t, "readState: no saved state for " + token);
+      journal.delete();
+      return state;
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+      if (in.readInt() != STATE_VERSION) {
+        journal.delete();
+        return state;
+      }
+      in.readInt(); // taskId
+      int count = in.readInt();
+      HashMap<String, Long> generations = new HashMap<String, Long>();
+      long totalBytes = journal.length();
+      for (int i = 0; i < count; ++i) {
+        String section = in.readUTF();
+        long generation = in.readLong();
+        generations.put(section, generation);
+        totalBytes += new File(stateDir, sectionFileName(section, generation)).length();
+      }
+      if (totalBytes > MAX_RESTORE_BYTES) {
+        WebLogger.getLogger(appName).e(t, "readState: discarding " + totalBytes +
+            " bytes of saved state");
+        journal.delete();
+        return state;
+      }
+      for (Map.Entry<String, Long> entry : generations.entrySet()) {
+        File file = new File(stateDir, sectionFileName(entry.getKey(), entry.getValue()));
+        sections.put(entry.getKey(), new Section(readSection(file), entry.getValue()));
+      }
+      state.responses.addAll(readJournal(journal));
+    } catch (IOException e) {
+      // all or nothing; a partial restore would mix sections from different saves
+      WebLogger.getLogger(appName).w(t, "readState: discarding unreadable state " + e.toString());
+      sections.clear();
+      state.responses.clear();
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    }
+
+    // continue journaling from the restored responses; rewriting also drops a cut-short record
+    for (String json : state.responses) {
+      long bytes = journalRecordBytes(json);
+      journaled.addLast(new JournalEntry(json, bytes));
+      journaledBytes += bytes;
+    }
+    if (journaled.isEmpty()) {
+      journal.delete();
+    } else {
+      rewriteJournal();
+    }
+    return state;
+  }
+
+  private static ArrayList<String> readSection(File file) throws IOException {
+    DataInputStream in = null;
+    try {
+      long limit = file.length();
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != STATE_VERSION) {
+        throw new IOException("unexpected version in " + file.getName());
+      }
+      int count = in.readInt();
+      if (count < 0 || count > limit) {
+        throw new IOException("unexpected count in " + file.getName());
+      }
+      ArrayList<String> values = new ArrayList<String>(count);
+      for (int i = 0; i < count; ++i) {
+        values.add(readString(in, limit));
+      }
+      return values;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  // type, length and UTF-8 bytes of an add record
+  private static long journalRecordBytes(String json) {
+    return 8L + json.getBytes(UTF8).length;
+  }
+
+  private static ArrayList<String> readJournal(File file) throws IOException {
+    ArrayDeque<String> responses = new ArrayDeque<String>();
+    if (!file.exists()) {
+      return new ArrayList<String>();
+    }
+    DataInputStream in = null;
+    try {
+      long limit = file.length();
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != STATE_VERSION) {
+        throw new IOException("unexpected version in " + file.getName());
+      }
+      for (;;) {
+        int type = in.readInt();
+        if (type == JOURNAL_ADD) {
+          String json = readString(in, limit);
+          if (json == null) {
+            throw new IOException("null response in " + file.getName());
+          }
+          responses.addLast(json);
+        } else if (type == JOURNAL_REMOVE) {
+          int count = in.readInt();
+          if (count < 0 || count > responses.size()) {
+            throw new IOException("unexpected removal in " + file.getName());
+          }
+          for (int i = 0; i < count; ++i) {
+            responses.removeFirst();
+          }
+        } else {
+          throw new IOException("unexpected record in " + file.getName());
+        }
+      }
+    } catch (EOFException e) {
+      // the end of the journal; or the last record was cut short by a process kill, in
+      // which case it was never synced and nothing after it was written
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    }
+    return new ArrayList<String>(responses);
+  }
+
+  // runs on the executor
+  private void journalAdded(String json) {
+    byte[] bytes = json.getBytes(UTF8);
+    long recordBytes = 8L + bytes.length;
+    journaled.addLast(new JournalEntry(json, recordBytes));
+    journaledBytes += recordBytes;
+    if (journalFailed) {
+      rewriteJournal();
+      return;
+    }
+    appendJournal(JOURNAL_ADD, bytes, 0);
+  }
+
+  // runs on the executor
+  private void journalRemoved(int count) {
+    for (int i = 0; i < count && !journaled.isEmpty(); ++i) {
+      journaledBytes -= journaled.removeFirst().bytes;
+    }
+    File journal = new File(stateDir, JOURNAL);
+    if (journaled.isEmpty()) {
+      // the queue drained; nothing to keep
+      journalFailed = !journal.delete() && journal.exists();
+      return;
+    }
+    if (journalFailed || journal.length() > journaledBytes + MAX_JOURNAL_SLACK_BYTES) {
+      rewriteJournal();
+      return;
+    }
+    appendJournal(JOURNAL_REMOVE, null, count);
+  }
+
+  private void appendJournal(int type, byte[] json, int count) {
+    try {
+      if (!stateDir.exists() && !stateDir.mkdirs()) {
+        throw new IOException("unable to create " + stateDir.getName());
+      }
+      File journal = new File(stateDir, JOURNAL);
+      boolean isNew = (journal.length() == 0L);
+      FileOutputStream fos = new FileOutputStream(journal, true);
+      try {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        if (isNew) {
+          out.writeInt(STATE_VERSION);
+        }
+        out.writeInt(type);
+        if (type == JOURNAL_ADD) {
+          out.writeInt(json.length);
+          out.write(json);
+        } else {
+          out.writeInt(count);
+        }
+        out.flush();
+        fos.getFD().sync();
+      } finally {
+        fos.close();
+      }
+    } catch (IOException e) {
+      WebLogger.getLogger(appName).printStackTrace(e);
+      journalFailed = true;
+    }
+  }
+
+  // runs on the executor; the token must not be handed out while the journal may not match
+  // the queue
+  private boolean isJournalSynced() {
+    if (journalFailed) {
+      rewriteJournal();
+    }
+    return !journalFailed;
+  }
+
+  // replace the journal with one add record per journaled response
+  private void rewriteJournal() {
+    try {
+      if (!stateDir.exists() && !stateDir.mkdirs()) {
+        throw new IOException("unable to create " + stateDir.getName());
+      }
+      new AtomicWrite() {
+        @Override
+        void write(DataOutputStream out) throws IOException {
+          for (JournalEntry entry : journaled) {
+            byte[] bytes = entry.json.getBytes(UTF8);
+            out.writeInt(JOURNAL_ADD);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+          }
+        }
+      }.run(new File(stateDir, JOURNAL));
+      journalFailed = false;
+    } catch (IOException e) {
+      WebLogger.getLogger(appName).printStackTrace(e);
+      journalFailed = true;
+    }
+  }
+}
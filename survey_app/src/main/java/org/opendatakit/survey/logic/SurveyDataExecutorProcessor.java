@@ -25,6 +25,9 @@ import java.util.List;
 import java.util.Map;
 
 /**
+ * The queries this processor issues are served through the QueryResultCache that wraps
+ * the activity's database (see MainMenuActivity.getDatabase()).
+ *
  * @author mitchellsundt@gmail.com
  */
 public class SurveyDataExecutorProcessor extends ExecutorProcessor {
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.utilities;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of SimpleDateFormat instances, one per (locale, pattern).
+ *
+ * SimpleDateFormat is expensive to construct and is not thread-safe, so each cached
+ * formatter is used under its own lock.
+ */
+public final class DateFormatCache {
+
+  private static final class Formatter {
+    final SimpleDateFormat format;
+    // reused so that formatting does not allocate a Date each time
+    final Date date = new Date();
+
+    Formatter(String pattern, Locale locale) {
+      format = new SimpleDateFormat(pattern, locale);
+    }
+  }
+
+  private static final ConcurrentHashMap<String, Formatter> formatters =
+      new ConcurrentHashMap<String, Formatter>();
+
+  private DateFormatCache() {
+  }
+
+  /**
+   * Format a timestamp using the cached formatter for the pattern and locale.
+   *
+   * @param pattern   a SimpleDateFormat pattern
+   * @param locale
+   * @param timestamp milliseconds since the epoch
+   * @return the formatted timestamp
+   */
+  public static String format(String pattern, Locale locale, long timestamp) {
+    String key = locale.toString() + '\n' + pattern;
+    Formatter formatter = formatters.get(key);
+    if (formatter == null) {
+      formatter = new Formatter(pattern, locale);
+      Formatter existing = formatters.putIfAbsent(key, formatter);
+      if (existing != null) {
+        formatter = existing;
+      }
+    }
+
+    synchronized (formatter) {
+      formatter.date.setTime(timestamp);
+      return formatter.format.format(formatter.date);
+    }
+  }
+}
@@ -1,5 +1,10 @@
 package org.opendatakit.survey.utilities;
 
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.Locale;
+
 /**
  * @author mitchellsundt@gmail.com
  */
@@ -8,14 +13,126 @@ public final class FormInfo {
   public final String formId;
   public final String formVersion;
   public final String formDisplayName;
-  public final String formDisplaySubtext;
+  // value of the forms provider DATE column when this entry was read
+  public final long lastUpdateDate;
+
+  // lastUpdateDate is only formatted into the subtext when a row is displayed
+  private final String subtextPattern;
+  private final Locale subtextLocale;
+  private String formDisplaySubtext = null;
 
-  FormInfo(String tableId, String formId, String formVersion, String formDisplayName, String
-      formDisplaySubtext) {
+  // locale-aware, case-insensitive sort keys; computed once when the entry is built
+  private final CollationKey tableIdKey;
+  private final CollationKey formIdKey;
+  private final CollationKey formVersionKey;
+  private final CollationKey formDisplayNameKey;
+
+  FormInfo(Collator collator, String tableId, String formId, String formVersion,
+      String formDisplayName, String subtextPattern, Locale subtextLocale, long lastUpdateDate) {
     this.tableId = tableId;
     this.formId = formId;
     this.formVersion = formVersion;
     this.formDisplayName = formDisplayName;
-    this.formDisplaySubtext = formDisplaySubtext;
+    this.subtextPattern = subtextPattern;
+    this.subtextLocale = subtextLocale;
+    this.lastUpdateDate = lastUpdateDate;
+
+    this.tableIdKey = sortKey(collator, tableId);
+    this.formIdKey = sortKey(collator, formId);
+    this.formVersionKey = sortKey(collator, formVersion);
+    this.formDisplayNameKey = sortKey(collator, formDisplayName);
+  }
+
+  /**
+   * @return the last-updated text shown under the form name. Formatted on first use.
+   */
+  public String getFormDisplaySubtext() {
+    if (formDisplaySubtext == null) {
+      formDisplaySubtext = DateFormatCache.format(subtextPattern, subtextLocale, lastUpdateDate);
+    }
+    return formDisplaySubtext;
+  }
+
+  /**
+   * @return a collator for building FormInfo sort keys. Collators are not thread-safe,
+   * so each load should obtain its own.
+   */
+  static Collator newSortCollator() {
+    Collator collator = Collator.getInstance(Locale.getDefault());
+    // ignore case differences, as compareToIgnoreCase did
+    collator.setStrength(Collator.SECONDARY);
+    return collator;
   }
+
+  private static CollationKey sortKey(Collator collator, String value) {
+    return (value == null) ? null : collator.getCollationKey(value);
+  }
+
+  // null values sort first
+  private static int compareKeys(CollationKey lhs, CollationKey rhs) {
+    if (lhs == null) {
+      return (rhs == null) ? 0 : -1;
+    }
+    if (rhs == null) {
+      return 1;
+    }
+    return lhs.compareTo(rhs);
+  }
+
+  private static int compareDates(FormInfo lhs, FormInfo rhs) {
+    return (lhs.lastUpdateDate < rhs.lastUpdateDate) ? -1 :
+        ((lhs.lastUpdateDate == rhs.lastUpdateDate) ? 0 : 1);
+  }
+
+  /**
+   * Orders by display name, then tableId, formId, formVersion and last update date.
+   */
+  public static final Comparator<FormInfo> BY_DISPLAY_NAME = new Comparator<FormInfo>() {
+    @Override
+    public int compare(FormInfo lhs, FormInfo rhs) {
+      int cmp = compareKeys(lhs.formDisplayNameKey, rhs.formDisplayNameKey);
+      if (cmp != 0) {
+        return cmp;
+      }
+      cmp = compareKeys(lhs.tableIdKey, rhs.tableIdKey);
+      if (cmp != 0) {
+        return cmp;
+      }
+      cmp = compareKeys(lhs.formIdKey, rhs.formIdKey);
+      if (cmp != 0) {
+        return cmp;
+      }
+      cmp = compareKeys(lhs.formVersionKey, rhs.formVersionKey);
+      if (cmp != 0) {
+        return cmp;
+      }
+      return compareDates(lhs, rhs);
+    }
+  };
+
+  /**
+   * Orders by tableId, then display name, formId, formVersion and last update date.
+   */
+  public static final Comparator<FormInfo> BY_TABLE_ID = new Comparator<FormInfo>() {
+    @Override
+    public int compare(FormInfo left, FormInfo right) {
+      int cmp = compareKeys(left.tableIdKey, right.tableIdKey);
+      if (cmp != 0) {
+        return cmp;
+      }
+      cmp = compareKeys(left.formDisplayNameKey, right.formDisplayNameKey);
+      if (cmp != 0) {
+        return cmp;
+      }
+      cmp = compareKeys(left.formIdKey, right.formIdKey);
+      if (cmp != 0) {
+        return cmp;
+      }
+      cmp = compareKeys(left.formVersionKey, right.formVersionKey);
+      if (cmp != 0) {
+        return cmp;
+      }
+      return compareDates(left, right);
+    }
+  };
 }
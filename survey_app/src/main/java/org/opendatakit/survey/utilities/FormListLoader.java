@@ -18,45 +18,229 @@ import androidx.loader.content.AsyncTaskLoader;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.text.TextUtils;
 import org.opendatakit.properties.CommonToolProperties;
 import org.opendatakit.properties.PropertiesSingleton;
 import org.opendatakit.provider.FormsColumns;
 import org.opendatakit.provider.FormsProviderAPI;
 import org.opendatakit.survey.R;
-import org.opendatakit.utilities.LocalizationUtils;
+import org.opendatakit.survey.logic.FormIdStruct;
 
-import java.text.SimpleDateFormat;
+import java.text.Collator;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
 
 /**
+ * Loads the list of forms for an appName.
+ *
+ * The loader keeps the last list it produced and registers a content observer on the
+ * forms provider. When the loader is restarted and nothing has changed, the retained list
+ * is delivered without touching the provider. When the provider reports a change, only the
+ * tableId, formId and DATE columns are scanned and just the rows that are new or whose DATE
+ * differs from the retained entry are re-read and re-localized.
+ *
+ * Each newly produced list is also written to a snapshot in the app cache. On a cold start
+ * that snapshot is delivered first and then reconciled against the provider, so the form
+ * chooser is populated before the provider query completes.
+ *
+ * A {@link FormSearchIndex} is maintained alongside the list for type-ahead filtering.
+ *
+ * Whenever the list is re-read from the provider, the FormIdStruct of every listed form is
+ * resolved with one batch query, so that opening a form from the chooser finds it cached.
+ *
  * @author mitchellsundt@gmail.com
  */
 public class FormListLoader extends AsyncTaskLoader<ArrayList<FormInfo>> {
 
+  // beyond this many changed rows, a full query is cheaper than a keyed one
+  private static final int MAX_KEYED_REFRESH = 64;
+
+  private static final String[] CHANGE_SCAN_PROJECTION = { FormsColumns.TABLE_ID,
+      FormsColumns.FORM_ID, FormsColumns.DATE };
+
   private final String appName;
+  private final Uri baseUri;
+
+  private ForceLoadContentObserver mObserver = null;
+
+  // the last list delivered and the locale it was localized for
+  private ArrayList<FormInfo> mForms = null;
+  private String mFormsLocale = null;
+  // locale used by the most recent loadInBackground()
+  private volatile String mLoadedLocale = null;
 
+  // the on-disk snapshot is only consulted for the first load
+  private volatile boolean mSnapshotChecked = false;
+  // set when the delivered list came from the snapshot and must be reconciled
+  private volatile boolean mReconcilePending = false;
+
+  // search index for mForms, and the one built for the list being loaded
+  private volatile FormSearchIndex mSearchIndex = FormSearchIndex.EMPTY;
+  private volatile FormSearchIndex mLoadedSearchIndex = FormSearchIndex.EMPTY;
 
   public FormListLoader(Context context, String appName) {
     super(context);
     this.appName = appName;
+    this.baseUri = Uri.withAppendedPath(FormsProviderAPI.CONTENT_URI, appName);
   }
 
-  @Override public ArrayList<FormInfo> loadInBackground() {
-    // This is called when a new Loader needs to be created. This
-    // sample only has one Loader, so we don't care about the ID.
-    // First, pick the base URI to use depending on whether we are
-    // currently filtering.
-    Uri baseUri = Uri.withAppendedPath(FormsProviderAPI.CONTENT_URI, appName);
+  private static String formKey(String tableId, String formId) {
+    return tableId + "/" + formId;
+  }
+
+  private String getCurrentLocale() {
     PropertiesSingleton props = CommonToolProperties.get(getContext(), appName);
+    return props.getUserSelectedDefaultLocale();
+  }
+
+  @Override public ArrayList<FormInfo> loadInBackground() {
+    String locale = getCurrentLocale();
+    mLoadedLocale = locale;
+    ArrayList<FormInfo> previous = mForms;
+
+    if (previous == null && !mSnapshotChecked) {
+      mSnapshotChecked = true;
+      ArrayList<FormInfo> snapshot = FormListSnapshot.read(getContext(), appName, locale);
+      if (snapshot != null) {
+        mReconcilePending = true;
+        mLoadedSearchIndex = FormSearchIndex.update(null, snapshot);
+        return snapshot;
+      }
+    }
+
+    ArrayList<FormInfo> forms = loadForms(locale, previous);
+    if (forms != previous) {
+      FormListSnapshot.write(getContext(), appName, locale, forms);
+      // tokens of unchanged (reused) FormInfo entries carry over from the current index
+      mLoadedSearchIndex = FormSearchIndex.update(mSearchIndex, forms);
+      prefetchFormIdStructs(forms);
+    }
+    return forms;
+  }
+
+  private void prefetchFormIdStructs(ArrayList<FormInfo> forms) {
+    // the same URIs that FormChooserListFragment passes to chooseForm()
+    ArrayList<Uri> formUris = new ArrayList<Uri>(forms.size());
+    for (FormInfo info : forms) {
+      formUris.add(Uri.withAppendedPath(Uri.withAppendedPath(baseUri, info.tableId),
+          info.formId));
+    }
+    // only forms missing from the cache are queried
+    FormIdStruct.retrieveFormIdStructs(getContext().getContentResolver(), formUris);
+  }
+
+  /**
+   * @return the search index for the most recently delivered form list
+   */
+  public FormSearchIndex getSearchIndex() {
+    return mSearchIndex;
+  }
+
+  private ArrayList<FormInfo> loadForms(String locale, ArrayList<FormInfo> previous) {
+    if (previous == null || !TextUtils.equals(locale, mFormsLocale)) {
+      // nothing to reuse -- read everything
+      return queryForms(locale, null, null);
+    }
+
+    HashMap<String, FormInfo> known = new HashMap<String, FormInfo>();
+    for (FormInfo info : previous) {
+      known.put(formKey(info.tableId, info.formId), info);
+    }
 
+    // scan the narrow change-detection columns to find what is new or modified
+    ArrayList<String> keysInOrder = new ArrayList<String>();
+    ArrayList<String> changedTableIds = new ArrayList<String>();
+    ArrayList<String> changedFormIds = new ArrayList<String>();
+
+    Cursor c = null;
+    try {
+      c = getContext().getContentResolver().query(baseUri, CHANGE_SCAN_PROJECTION, null, null,
+          null);
+
+      if (c != null && c.moveToFirst()) {
+        int idxTableId = c.getColumnIndex(FormsColumns.TABLE_ID);
+        int idxFormId = c.getColumnIndex(FormsColumns.FORM_ID);
+        int idxLastUpdateDate = c.getColumnIndex(FormsColumns.DATE);
+
+        do {
+          String tableId = c.getString(idxTableId);
+          String formId = c.getString(idxFormId);
+          String key = formKey(tableId, formId);
+          keysInOrder.add(key);
+
+          FormInfo info = known.get(key);
+          if (info == null || info.lastUpdateDate != c.getLong(idxLastUpdateDate)) {
+            changedTableIds.add(tableId);
+            changedFormIds.add(formId);
+          }
+        } while (c.moveToNext());
+      }
+    } finally {
+      if (c != null && !c.isClosed()) {
+        c.close();
+      }
+    }
+
+    if (changedTableIds.isEmpty() && keysInOrder.size() == previous.size()) {
+      // nothing was added, removed or modified
+      return previous;
+    }
+
+    if (!changedTableIds.isEmpty()) {
+      // forms were added or updated; do not open a stale cached form definition
+      FormIdStruct.invalidateCache();
+    }
+
+    if (changedTableIds.size() > MAX_KEYED_REFRESH) {
+      return queryForms(locale, null, null);
+    }
+
+    if (!changedTableIds.isEmpty()) {
+      StringBuilder b = new StringBuilder();
+      String[] selectionArgs = new String[2 * changedTableIds.size()];
+      for (int i = 0; i < changedTableIds.size(); ++i) {
+        if (i != 0) {
+          b.append(" OR ");
+        }
+        b.append("(").append(FormsColumns.TABLE_ID).append("=? AND ")
+            .append(FormsColumns.FORM_ID).append("=?)");
+        selectionArgs[2 * i] = changedTableIds.get(i);
+        selectionArgs[2 * i + 1] = changedFormIds.get(i);
+      }
+
+      for (FormInfo info : queryForms(locale, b.toString(), selectionArgs)) {
+        known.put(formKey(info.tableId, info.formId), info);
+      }
+    }
+
+    // assemble in provider order; dropping anything that is no longer present
+    ArrayList<FormInfo> forms = new ArrayList<FormInfo>(keysInOrder.size());
+    for (String key : keysInOrder) {
+      FormInfo info = known.get(key);
+      if (info != null) {
+        forms.add(info);
+      }
+    }
+    return forms;
+  }
+
+  /**
+   * Read and localize the rows of the forms provider matching the selection.
+   *
+   * @param locale        the user-selected locale for the display names
+   * @param selection     null to read all forms
+   * @param selectionArgs bind arguments for the selection
+   * @return the forms, in provider order
+   */
+  private ArrayList<FormInfo> queryForms(String locale, String selection,
+      String[] selectionArgs) {
     ArrayList<FormInfo> forms = new ArrayList<FormInfo>();
 
     Cursor c = null;
     try {
 
-      c = getContext().getContentResolver().query(baseUri, null, null, null, null);
+      c = getContext().getContentResolver().query(baseUri, null, selection, selectionArgs, null);
 
       if ( c != null && c.moveToFirst() ) {
         int idxTableId = c.getColumnIndex(FormsColumns.TABLE_ID);
@@ -65,25 +249,28 @@ public class FormListLoader extends AsyncTaskLoader<ArrayList<FormInfo>> {
         int idxLastUpdateDate = c.getColumnIndex(FormsColumns.DATE);
         int idxFormVersion = c.getColumnIndex(FormsColumns.FORM_VERSION);
 
-        SimpleDateFormat formatter = new SimpleDateFormat(getContext().getString(R.string
-            .last_updated_on_date_at_time), Locale.getDefault());
+        String subtextPattern = getContext().getString(R.string.last_updated_on_date_at_time);
+        Locale subtextLocale = Locale.getDefault();
+        Collator collator = FormInfo.newSortCollator();
 
         do {
           String tableId = c.getString(idxTableId);
           String formVersion = c.isNull(idxFormVersion) ? null :
               c.getString(idxFormVersion);
           long timestamp = c.getLong(idxLastUpdateDate);
-          Date lastModificationDate = new Date(timestamp);
           String formTitle = c.getString(idxFormTitle);
 
           FormInfo info = new FormInfo(
+              collator,
               tableId,
               c.getString(idxFormId),
               formVersion,
-              LocalizationUtils.getLocalizedDisplayName(appName, tableId,
-                  props.getUserSelectedDefaultLocale(),
+              LocalizedDisplayNameCache.getLocalizedDisplayName(appName, tableId,
+                  locale,
                   formTitle),
-              formatter.format(lastModificationDate));
+              subtextPattern,
+              subtextLocale,
+              timestamp);
           forms.add(info);
         } while ( c.moveToNext());
       }
@@ -93,12 +280,60 @@ public class FormListLoader extends AsyncTaskLoader<ArrayList<FormInfo>> {
       }
     }
 
-
     return forms;
   }
 
+  @Override public void deliverResult(ArrayList<FormInfo> forms) {
+    if (isReset()) {
+      return;
+    }
+    if (forms != mForms) {
+      mForms = forms;
+      mFormsLocale = mLoadedLocale;
+      mSearchIndex = mLoadedSearchIndex;
+    }
+    if (isStarted()) {
+      super.deliverResult(forms);
+    }
+    if (mReconcilePending) {
+      // the snapshot is on screen; now check it against the provider
+      mReconcilePending = false;
+      onContentChanged();
+    }
+  }
+
   @Override protected void onStartLoading() {
     super.onStartLoading();
-    forceLoad();
+    if (mObserver == null) {
+      mObserver = new ForceLoadContentObserver();
+      getContext().getContentResolver().registerContentObserver(baseUri, true, mObserver);
+    }
+
+    if (mForms != null) {
+      // serve the retained list immediately
+      deliverResult(mForms);
+    }
+
+    if (takeContentChanged() || mForms == null ||
+        !TextUtils.equals(getCurrentLocale(), mFormsLocale)) {
+      forceLoad();
+    }
+  }
+
+  @Override protected void onStopLoading() {
+    cancelLoad();
+  }
+
+  @Override protected void onReset() {
+    super.onReset();
+    onStopLoading();
+
+    if (mObserver != null) {
+      getContext().getContentResolver().unregisterContentObserver(mObserver);
+      mObserver = null;
+    }
+    mForms = null;
+    mFormsLocale = null;
+    mSearchIndex = FormSearchIndex.EMPTY;
   }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.utilities;
+
+import android.content.Context;
+import org.opendatakit.logging.WebLogger;
+import org.opendatakit.survey.R;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Compact binary copy of the last form list produced by the FormListLoader.
+ *
+ * The snapshot lives in the app-private cache directory so that the form chooser can show
+ * the list on a cold start before the forms provider has been queried. It is only a hint;
+ * the loader always reconciles it against the provider afterward.
+ */
+final class FormListSnapshot {
+
+  private static final String t = FormListSnapshot.class.getSimpleName();
+
+  // bump whenever the layout of the file changes
+  private static final int SNAPSHOT_VERSION = 2;
+
+  private FormListSnapshot() {
+  }
+
+  private static File getSnapshotFile(Context context, String appName) {
+    return new File(context.getCacheDir(), "formList_" + appName + ".bin");
+  }
+
+  private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullableString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /**
+   * Read the snapshot for the appName.
+   *
+   * @param context
+   * @param appName
+   * @param locale  the locale the caller will display
+   * @return the forms, or null if there is no usable snapshot for this locale
+   */
+  static ArrayList<FormInfo> read(Context context, String appName, String locale) {
+    File snapshot = getSnapshotFile(context, appName);
+    if (!snapshot.exists()) {
+      return null;
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+      if (in.readInt() != SNAPSHOT_VERSION) {
+        return null;
+      }
+      String snapshotLocale = readNullableString(in);
+      if (snapshotLocale == null ? locale != null : !snapshotLocale.equals(locale)) {
+        return null;
+      }
+      int count = in.readInt();
+      Collator collator = FormInfo.newSortCollator();
+      String subtextPattern = context.getString(R.string.last_updated_on_date_at_time);
+      Locale subtextLocale = Locale.getDefault();
+      ArrayList<FormInfo> forms = new ArrayList<FormInfo>(count);
+      for (int i = 0; i < count; ++i) {
+        String tableId = in.readUTF();
+        String formId = in.readUTF();
+        String formVersion = readNullableString(in);
+        String formDisplayName = readNullableString(in);
+        long lastUpdateDate = in.readLong();
+        forms.add(new FormInfo(collator, tableId, formId, formVersion, formDisplayName,
+            subtextPattern, subtextLocale, lastUpdateDate));
+      }
+      return forms;
+    } catch (IOException e) {
+      WebLogger.getLogger(appName).w(t, "read: discarding unreadable snapshot " + e.toString());
+      snapshot.delete();
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  /**
+   * Replace the snapshot for the appName. The file is written to a temporary name and
+   * renamed so that a reader never sees a partial snapshot.
+   *
+   * @param context
+   * @param appName
+   * @param locale  the locale the display names were localized for
+   * @param forms
+   */
+  static void write(Context context, String appName, String locale, ArrayList<FormInfo> forms) {
+    File snapshot = getSnapshotFile(context, appName);
+    File temp = new File(snapshot.getParentFile(), snapshot.getName() + ".tmp");
+
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      out.writeInt(SNAPSHOT_VERSION);
+      writeNullableString(out, locale);
+      out.writeInt(forms.size());
+      for (FormInfo info : forms) {
+        out.writeUTF(info.tableId);
+        out.writeUTF(info.formId);
+        writeNullableString(out, info.formVersion);
+        writeNullableString(out, info.formDisplayName);
+        out.writeLong(info.lastUpdateDate);
+      }
+      out.close();
+      out = null;
+      if (!temp.renameTo(snapshot)) {
+        WebLogger.getLogger(appName).w(t, "write: unable to replace " + snapshot.getName());
+        temp.delete();
+      }
+    } catch (IOException e) {
+      WebLogger.getLogger(appName).printStackTrace(e);
+      temp.delete();
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        temp.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable prefix index over the display name, tableId and formId of a form list.
+ *
+ * Every form contributes its lower-cased words (and its whole tableId and formId) as
+ * tokens. The tokens are held in one sorted array so that a prefix lookup is a pair of
+ * binary searches. A query matches a form when every word of the query is a prefix of
+ * one of that form's tokens.
+ *
+ * Indexes are rebuilt with {@link #update(FormSearchIndex, List)}, which reuses the
+ * tokens of any FormInfo instance that was already indexed; the FormListLoader reuses
+ * FormInfo instances for unchanged forms, so only new or changed forms are tokenized.
+ */
+public final class FormSearchIndex {
+
+  private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  public static final FormSearchIndex EMPTY = new FormSearchIndex(
+      new IdentityHashMap<FormInfo, String[]>(), new String[0], new FormInfo[0]);
+
+  // tokens of each indexed form
+  private final IdentityHashMap<FormInfo, String[]> tokensByForm;
+  // sorted tokens and, at the same position, the form that produced it
+  private final String[] tokens;
+  private final FormInfo[] owners;
+
+  private FormSearchIndex(IdentityHashMap<FormInfo, String[]> tokensByForm, String[] tokens,
+      FormInfo[] owners) {
+    this.tokensByForm = tokensByForm;
+    this.tokens = tokens;
+    this.owners = owners;
+  }
+
+  private static String normalize(String value) {
+    return value.toLowerCase(Locale.getDefault());
+  }
+
+  private static void addWords(ArrayList<String> out, String value) {
+    if (value == null) {
+      return;
+    }
+    for (String word : WORD_SEPARATOR.split(normalize(value))) {
+      if (word.length() != 0 && !out.contains(word)) {
+        out.add(word);
+      }
+    }
+  }
+
+  private static String[] tokenize(FormInfo info) {
+    ArrayList<String> out = new ArrayList<String>();
+    addWords(out, info.formDisplayName);
+    addWords(out, info.tableId);
+    addWords(out, info.formId);
+    // also match on the whole identifiers, e.g., "my_table"
+    if (info.tableId != null && !out.contains(normalize(info.tableId))) {
+      out.add(normalize(info.tableId));
+    }
+    if (info.formId != null && !out.contains(normalize(info.formId))) {
+      out.add(normalize(info.formId));
+    }
+    return out.toArray(new String[out.size()]);
+  }
+
+  private static final class Entry implements Comparable<Entry> {
+    final String token;
+    final FormInfo owner;
+
+    Entry(String token, FormInfo owner) {
+      this.token = token;
+      this.owner = owner;
+    }
+
+    @Override
+    public int compareTo(Entry another) {
+      return token.compareTo(another.token);
+    }
+  }
+
+  /**
+   * Build the index for a form list.
+   *
+   * @param previous an earlier index whose per-form tokens can be reused, or null
+   * @param forms    the forms to index
+   * @return the new index
+   */
+  public static FormSearchIndex update(FormSearchIndex previous, List<FormInfo> forms) {
+    IdentityHashMap<FormInfo, String[]> tokensByForm = new IdentityHashMap<FormInfo, String[]>();
+    int count = 0;
+    for (FormInfo info : forms) {
+      String[] formTokens = (previous == null) ? null : previous.tokensByForm.get(info);
+      if (formTokens == null) {
+        formTokens = tokenize(info);
+      }
+      tokensByForm.put(info, formTokens);
+      count += formTokens.length;
+    }
+
+    Entry[] entries = new Entry[count];
+    int i = 0;
+    for (Map.Entry<FormInfo, String[]> e : tokensByForm.entrySet()) {
+      for (String token : e.getValue()) {
+        entries[i++] = new Entry(token, e.getKey());
+      }
+    }
+    Arrays.sort(entries);
+
+    String[] tokens = new String[count];
+    FormInfo[] owners = new FormInfo[count];
+    for (i = 0; i < count; ++i) {
+      tokens[i] = entries[i].token;
+      owners[i] = entries[i].owner;
+    }
+    return new FormSearchIndex(tokensByForm, tokens, owners);
+  }
+
+  // index of the first token that is >= prefix
+  private int lowerBound(String prefix) {
+    int lo = 0;
+    int hi = tokens.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (tokens[mid].compareTo(prefix) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // the forms having a token that starts with prefix
+  private IdentityHashMap<FormInfo, Boolean> formsWithPrefix(String prefix) {
+    IdentityHashMap<FormInfo, Boolean> matches = new IdentityHashMap<FormInfo, Boolean>();
+    for (int i = lowerBound(prefix); i < tokens.length && tokens[i].startsWith(prefix); ++i) {
+      matches.put(owners[i], Boolean.TRUE);
+    }
+    return matches;
+  }
+
+  /**
+   * Filter a list of forms down to those matching the query.
+   *
+   * @param forms the forms to filter, in display order
+   * @param query the text typed by the user
+   * @return the matching forms in the same order; forms itself if the query is empty
+   */
+  public List<FormInfo> filter(List<FormInfo> forms, String query) {
+    String[] terms = (query == null) ? new String[0] :
+        WORD_SEPARATOR.split(normalize(query.trim()));
+
+    IdentityHashMap<FormInfo, Boolean> matches = null;
+    for (String term : terms) {
+      if (term.length() == 0) {
+        continue;
+      }
+      IdentityHashMap<FormInfo, Boolean> termMatches = formsWithPrefix(term);
+      if (matches == null) {
+        matches = termMatches;
+      } else {
+        matches.keySet().retainAll(termMatches.keySet());
+      }
+      if (matches.isEmpty()) {
+        return Collections.emptyList();
+      }
+    }
+
+    if (matches == null) {
+      return forms;
+    }
+
+    ArrayList<FormInfo> filtered = new ArrayList<FormInfo>(matches.size());
+    for (FormInfo info : forms) {
+      if (matches.containsKey(info)) {
+        filtered.add(info);
+      }
+    }
+    return filtered;
+  }
+}
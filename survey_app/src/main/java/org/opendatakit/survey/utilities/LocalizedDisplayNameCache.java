@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.utilities;
+
+import android.text.TextUtils;
+import android.util.LruCache;
+import org.opendatakit.utilities.LocalizationUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide, bounded cache of localized form display names.
+ *
+ * The forms provider stores display names as localizable JSON. Resolving one requires
+ * parsing that JSON, which adds up when every visit to the form chooser or the shortcut
+ * list re-localizes hundreds of forms. Entries are keyed by appName, tableId, locale and the
+ * raw display name, so a changed display name simply misses. When a different locale is
+ * seen for an appName, the whole cache is dropped.
+ */
+public final class LocalizedDisplayNameCache {
+
+  private static final int MAX_ENTRIES = 1024;
+
+  private static final LruCache<String, String> cache = new LruCache<String, String>(MAX_ENTRIES);
+
+  // the locale most recently requested for each appName
+  private static final Map<String, String> lastLocale = new HashMap<String, String>();
+
+  private LocalizedDisplayNameCache() {
+  }
+
+  /**
+   * Same contract as LocalizationUtils.getLocalizedDisplayName, served from the cache
+   * when possible.
+   *
+   * @param appName
+   * @param tableId
+   * @param userSelectedDefaultLocale
+   * @param displayName the raw (localizable) display name from the forms provider
+   * @return the localized display name
+   */
+  public static String getLocalizedDisplayName(String appName, String tableId,
+      String userSelectedDefaultLocale, String displayName) {
+    synchronized (lastLocale) {
+      boolean seen = lastLocale.containsKey(appName);
+      String previous = lastLocale.put(appName, userSelectedDefaultLocale);
+      if (seen && !TextUtils.equals(previous, userSelectedDefaultLocale)) {
+        cache.evictAll();
+      }
+    }
+
+    String key = appName + '\n' + tableId + '\n' + userSelectedDefaultLocale + '\n' + displayName;
+    String localized = cache.get(key);
+    if (localized == null) {
+      localized = LocalizationUtils.getLocalizedDisplayName(appName, tableId,
+          userSelectedDefaultLocale, displayName);
+      if (localized != null) {
+        cache.put(key, localized);
+      }
+    }
+    return localized;
+  }
+}
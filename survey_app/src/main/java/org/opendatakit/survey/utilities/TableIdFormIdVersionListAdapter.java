@@ -15,100 +15,141 @@
 package org.opendatakit.survey.utilities;
 
 import android.content.Context;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
 import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
 import org.opendatakit.survey.R;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Implementation of cursor adapter that displays the version of a form if a
+ * RecyclerView adapter that displays the version of a form if a
  * form has a version.
  *
+ * New lists are diffed against the displayed one on a background thread, so only the rows
+ * that were added, removed, moved or changed are rebound.
+ *
  * @author mitchellsundt@gmail.com
  *
  */
-public class TableIdFormIdVersionListAdapter extends BaseAdapter {
+public class TableIdFormIdVersionListAdapter
+    extends ListAdapter<FormInfo, TableIdFormIdVersionListAdapter.FormViewHolder> {
+
+  /**
+   * Notified when the user taps a form.
+   */
+  public interface OnFormClickListener {
+    void onFormClick(FormInfo info);
+  }
+
+  private static final DiffUtil.ItemCallback<FormInfo> DIFF_CALLBACK =
+      new DiffUtil.ItemCallback<FormInfo>() {
+    @Override
+    public boolean areItemsTheSame(@NonNull FormInfo oldItem, @NonNull FormInfo newItem) {
+      return TextUtils.equals(oldItem.tableId, newItem.tableId) &&
+          TextUtils.equals(oldItem.formId, newItem.formId);
+    }
+
+    @Override
+    public boolean areContentsTheSame(@NonNull FormInfo oldItem, @NonNull FormInfo newItem) {
+      // the loader reuses the FormInfo of an unchanged form
+      if (oldItem == newItem) {
+        return true;
+      }
+      // the subtext is derived from lastUpdateDate
+      return oldItem.lastUpdateDate == newItem.lastUpdateDate &&
+          TextUtils.equals(oldItem.formVersion, newItem.formVersion) &&
+          TextUtils.equals(oldItem.formDisplayName, newItem.formDisplayName);
+    }
+  };
+
+  static final class FormViewHolder extends RecyclerView.ViewHolder {
+    final TextView formDisplayName;
+    final TextView formLastUpdateDate;
+    final TextView tableIdFormVersion;
+    FormInfo info;
+
+    FormViewHolder(View view, int formDisplayNameId, int formLastUpdateDateId,
+        int tableIdFormVersionId) {
+      super(view);
+      formDisplayName = view.findViewById(formDisplayNameId);
+      formLastUpdateDate = (formLastUpdateDateId == -1) ? null :
+          (TextView) view.findViewById(formLastUpdateDateId);
+      tableIdFormVersion = (tableIdFormVersionId == -1) ? null :
+          (TextView) view.findViewById(tableIdFormVersionId);
+    }
+  }
 
   private final Context mContext;
   private final int mLayout;
   private final int mFormDisplayNameId;
   private final int mFormLastUpdateDateId;
   private final int mTableIdFormVersionId;
-  private final ArrayList<FormInfo> mItems = new ArrayList<FormInfo>();
+  private final OnFormClickListener mListener;
 
   private static final String TAG = TableIdFormIdVersionListAdapter.class.getSimpleName();
 
   public TableIdFormIdVersionListAdapter(Context context, int layout, int form_display_name_id,
-      int form_last_update_date_id, int form_version_id) {
+      int form_last_update_date_id, int form_version_id, OnFormClickListener listener) {
+    super(DIFF_CALLBACK);
     this.mContext = context;
     this.mLayout = layout;
     this.mFormDisplayNameId = form_display_name_id;
     this.mFormLastUpdateDateId = form_last_update_date_id;
     this.mTableIdFormVersionId = form_version_id;
+    this.mListener = listener;
   }
 
   public void clear() {
-    mItems.clear();
-  }
-
-  public void swapData(ArrayList<FormInfo> items) {
-    mItems.clear();
-    mItems.addAll(items);
-    notifyDataSetChanged();
-  }
-
-  @Override
-  public int getCount() {
-    return mItems.size();
+    submitList(null);
   }
 
-  @Override
-  public Object getItem(int position) {
-    return mItems.get(position);
+  /**
+   * Display a new list of forms. The list is copied, so the caller may keep modifying it.
+   *
+   * @param items
+   * @param commitCallback run once the new list is displayed; may be null
+   */
+  public void swapData(List<FormInfo> items, Runnable commitCallback) {
+    submitList(new ArrayList<FormInfo>(items), commitCallback);
   }
 
+  @NonNull
   @Override
-  public long getItemId(int position) {
-    return Integer.MAX_VALUE - position;
-  }
-
-  @Override
-  public int getItemViewType(int position) {
-    return 1;
-  }
-
-  @Override
-  public boolean isEnabled(int position) {
-    return true;
-  }
-
-  @Override
-  public int getViewTypeCount() {
-    return 1;
+  public FormViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+    View view = LayoutInflater.from(mContext).inflate(mLayout, parent, false);
+    final FormViewHolder holder = new FormViewHolder(view, mFormDisplayNameId,
+        mFormLastUpdateDateId, mTableIdFormVersionId);
+    view.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        if (holder.info != null && mListener != null) {
+          mListener.onFormClick(holder.info);
+        }
+      }
+    });
+    return holder;
   }
 
   @Override
-  public View getView(int position, View view, ViewGroup parent) {
-    FormInfo info = mItems.get(position);
-    if (view == null ) {
-      LayoutInflater layoutInflater =
-        (LayoutInflater) mContext.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-      view = layoutInflater.inflate(mLayout, parent, false);
-    }
-    TextView formTitleView = view.findViewById(mFormDisplayNameId);
-    formTitleView.setText(info.formDisplayName);
+  public void onBindViewHolder(@NonNull FormViewHolder holder, int position) {
+    FormInfo info = getItem(position);
+    holder.info = info;
+    holder.formDisplayName.setText(info.formDisplayName);
 
-    if ( mFormLastUpdateDateId != -1) {
-      TextView formDateView = view.findViewById(mFormLastUpdateDateId);
-      formDateView.setText(info.formDisplaySubtext);
+    if ( holder.formLastUpdateDate != null ) {
+      holder.formLastUpdateDate.setText(info.getFormDisplaySubtext());
     }
 
-    if ( mTableIdFormVersionId != -1 ) {
-      TextView v = view.findViewById(mTableIdFormVersionId);
+    if ( holder.tableIdFormVersion != null ) {
+      TextView v = holder.tableIdFormVersion;
       v.setVisibility(View.VISIBLE);
       if ( info.formVersion != null) {
         v.setText(mContext.getString(R.string.table_id_form_id_version, info.tableId, info.formId,
@@ -117,7 +158,6 @@ public class TableIdFormIdVersionListAdapter extends BaseAdapter {
         v.setText(mContext.getString(R.string.table_id_form_id, info.tableId, info.formId));
       }
     }
-    return view;
   }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2026 University of Washington
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.opendatakit.survey.views;
+
+import android.os.SystemClock;
+import org.opendatakit.logging.WebLogger;
+import org.opendatakit.survey.BuildConfig;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Call counts and latencies of the odkSurvey javascript bridge, per method.
+ *
+ * Latencies are kept in power-of-two microsecond buckets, so percentiles are reported as the
+ * upper bound of the bucket they fall in. A summary is written to the WebLogger at most once
+ * per SUMMARY_INTERVAL_MILLISECONDS, on the bridge thread, and can be shown on demand.
+ *
+ * Only debug builds record anything; in release builds start() and the record methods return
+ * immediately, so bridge calls take no lock.
+ */
+public final class BridgeMetrics {
+
+  private static final String t = BridgeMetrics.class.getSimpleName();
+
+  // the metrics menu item is only offered in debug builds
+  static final boolean ENABLED = BuildConfig.DEBUG;
+
+  private static final long SUMMARY_INTERVAL_MILLISECONDS = 60000L;
+
+  // bucket i counts calls taking less than 2^i microseconds; the last bucket is unbounded
+  private static final int BUCKET_COUNT = 22;
+
+  private static final class MethodMetrics {
+    long calls = 0L;
+    long ignored = 0L;
+    long totalNanos = 0L;
+    long maxNanos = 0L;
+    final long[] buckets = new long[BUCKET_COUNT];
+
+    void record(long nanos) {
+      ++calls;
+      totalNanos += nanos;
+      maxNanos = Math.max(maxNanos, nanos);
+      long micros = nanos / 1000L;
+      int bucket = 0;
+      while (bucket < BUCKET_COUNT - 1 && micros >= (1L << bucket)) {
+        ++bucket;
+      }
+      ++buckets[bucket];
+    }
+
+    long percentileMicros(int percentile) {
+      long rank = (calls * percentile + 99L) / 100L;
+      long seen = 0L;
+      for (int i = 0; i < BUCKET_COUNT; ++i) {
+        seen += buckets[i];
+        if (seen >= rank && seen != 0L) {
+          return (i == BUCKET_COUNT - 1) ? maxNanos / 1000L : (1L << i);
+        }
+      }
+      return 0L;
+    }
+  }
+
+  // guarded by the class lock; sorted for the summary
+  private static final TreeMap<String, MethodMetrics> metrics = new TreeMap<String, MethodMetrics>();
+  private static long lastSummary = SystemClock.elapsedRealtime();
+
+  private BridgeMetrics() {
+  }
+
+  private static MethodMetrics getMethodMetrics(String method) {
+    MethodMetrics m = metrics.get(method);
+    if (m == null) {
+      m = new MethodMetrics();
+      metrics.put(method, m);
+    }
+    return m;
+  }
+
+  /**
+   * @return the start time to pass to record()
+   */
+  static long start() {
+    return ENABLED ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Record a completed bridge call. Periodically logs the summary.
+   *
+   * @param appName    used for logging
+   * @param method
+   * @param startNanos from start()
+   */
+  static void record(String appName, String method, long startNanos) {
+    if (!ENABLED) {
+      return;
+    }
+    long nanos = System.nanoTime() - startNanos;
+    String summary = null;
+    synchronized (BridgeMetrics.class) {
+      getMethodMetrics(method).record(nanos);
+      long now = SystemClock.elapsedRealtime();
+      if (now - lastSummary >= SUMMARY_INTERVAL_MILLISECONDS) {
+        lastSummary = now;
+        summary = getSummary();
+      }
+    }
+    if (summary != null) {
+      WebLogger.getLogger(appName).i(t, summary);
+    }
+  }
+
+  /**
+   * Record a call that was ignored because its refId did not match.
+   *
+   * @param method
+   */
+  static void recordIgnored(String method) {
+    if (!ENABLED) {
+      return;
+    }
+    synchronized (BridgeMetrics.class) {
+      ++getMethodMetrics(method).ignored;
+    }
+  }
+
+  /**
+   * @return one line per method: calls, ignored calls, mean, p50, p90, p99 and max latency
+   * in microseconds
+   */
+  public static synchronized String getSummary() {
+    StringBuilder b = new StringBuilder("odkSurvey bridge (us):");
+    for (Map.Entry<String, MethodMetrics> entry : metrics.entrySet()) {
+      MethodMetrics m = entry.getValue();
+      b.append('\n').append(entry.getKey())
+          .append(" calls: ").append(m.calls)
+          .append(" ignored: ").append(m.ignored);
+      if (m.calls != 0L) {
+        b.append(" mean: ").append(m.totalNanos / m.calls / 1000L)
+            .append(" p50: ").append(m.percentileMicros(50))
+            .append(" p90: ").append(m.percentileMicros(90))
+            .append(" p99: ").append(m.percentileMicros(99))
+            .append(" max: ").append(m.maxNanos / 1000L);
+      }
+    }
+    return b.toString();
+  }
+
+  public static synchronized void reset() {
+    metrics.clear();
+    lastSummary = SystemClock.elapsedRealtime();
+  }
+}
@@ -16,9 +16,16 @@ package org.opendatakit.survey.views;
 
 import org.opendatakit.logging.WebLogger;
 import org.opendatakit.logging.WebLoggerIf;
+import org.opendatakit.survey.BuildConfig;
 import org.opendatakit.survey.activities.IOdkSurveyActivity;
 
+import org.opendatakit.utilities.ODKFileUtils;
+
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The class mapped to 'odkSurvey' in the Javascript
@@ -30,16 +37,32 @@ public class OdkSurveyStateManagement {
 
   public static final String t = "OdkSurveyStateManagement";
 
+  // Tracing of every bridge call. These run on each screen transition, so release builds
+  // compile out the message construction entirely. IGNORED calls are always logged.
+  private static final boolean TRACE = BuildConfig.DEBUG;
+
   private WeakReference<OdkSurveyWebView> mWebView;
   private IOdkSurveyActivity mActivity;
+  // the refId is fixed for the life of the activity, and a recreated activity builds a new
+  // state manager, so it is read once rather than on every bridge call
+  private final String mRefId;
   private final WebLoggerIf log;
 
   public OdkSurveyStateManagement(IOdkSurveyActivity activity, OdkSurveyWebView webView) {
     mWebView = new WeakReference<OdkSurveyWebView>(webView);
     mActivity = activity;
+    mRefId = activity.getRefId();
     log = WebLogger.getLogger(mActivity.getAppName());
   }
 
+  private boolean isCurrentRefId(String refId) {
+    return mRefId.equals(refId);
+  }
+
+  String getAppName() {
+    return mActivity.getAppName();
+  }
+
   public boolean isInactive() {
     return (mWebView.get() == null) || (mWebView.get().isInactive());
   }
@@ -50,16 +73,21 @@ public class OdkSurveyStateManagement {
   }
 
   public void clearAuxillaryHash() {
-    log.d("odkSurvey", "DO: clearAuxillaryHash()");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: clearAuxillaryHash()");
+    }
     mActivity.clearAuxillaryHash();
   }
 
   public void clearInstanceId(String refId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: clearInstanceId(" + refId + ")");
+      BridgeMetrics.recordIgnored("clearInstanceId");
       return;
     }
-    log.d("odkSurvey", "DO: clearInstanceId(" + refId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: clearInstanceId(" + refId + ")");
+    }
     mActivity.setInstanceId(null);
   }
 
@@ -71,142 +99,337 @@ public class OdkSurveyStateManagement {
    * @param instanceId
    */
   public void setInstanceId(String refId, String instanceId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: setInstanceId(" + refId + ", " + instanceId + ")");
+      BridgeMetrics.recordIgnored("setInstanceId");
       return;
     }
-    log.d("odkSurvey", "DO: setInstanceId(" + refId + ", " + instanceId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: setInstanceId(" + refId + ", " + instanceId + ")");
+    }
     mActivity.setInstanceId(instanceId);
   }
 
   public String getInstanceId(String refId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: getInstanceId(" + refId + ")");
+      BridgeMetrics.recordIgnored("getInstanceId");
       return null;
     }
-    log.d("odkSurvey", "DO: getInstanceId(" + refId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: getInstanceId(" + refId + ")");
+    }
     return mActivity.getInstanceId();
   }
 
+  public String getResponseJSONBatch(String refId, int maxBytes) {
+    if (!isCurrentRefId(refId)) {
+      log.w("odkSurvey", "IGNORED: getResponseJSONBatch(" + refId + ", " + maxBytes + ")");
+      BridgeMetrics.recordIgnored("getResponseJSONBatch");
+      return null;
+    }
+    if (TRACE) {
+      log.d("odkSurvey", "DO: getResponseJSONBatch(" + refId + ", " + maxBytes + ")");
+    }
+    return mActivity.getResponseJSONBatch(maxBytes);
+  }
+
+  public String openResponseStream(String refId, int chunkChars) {
+    if (!isCurrentRefId(refId)) {
+      log.w("odkSurvey", "IGNORED: openResponseStream(" + refId + ", " + chunkChars + ")");
+      BridgeMetrics.recordIgnored("openResponseStream");
+      return null;
+    }
+    if (TRACE) {
+      log.d("odkSurvey", "DO: openResponseStream(" + refId + ", " + chunkChars + ")");
+    }
+    return mActivity.openResponseStream(chunkChars);
+  }
+
+  public String getResponseChunk(String refId, int streamId, int chunkIndex) {
+    if (!isCurrentRefId(refId)) {
+      log.w("odkSurvey", "IGNORED: getResponseChunk(" + refId + ", " + streamId + ", "
+          + chunkIndex + ")");
+      BridgeMetrics.recordIgnored("getResponseChunk");
+      return null;
+    }
+    if (TRACE) {
+      log.d("odkSurvey", "DO: getResponseChunk(" + refId + ", " + streamId + ", "
+          + chunkIndex + ")");
+    }
+    return mActivity.getResponseChunk(streamId, chunkIndex);
+  }
+
+  public void closeResponseStream(String refId, int streamId) {
+    if (!isCurrentRefId(refId)) {
+      log.w("odkSurvey", "IGNORED: closeResponseStream(" + refId + ", " + streamId + ")");
+      BridgeMetrics.recordIgnored("closeResponseStream");
+      return;
+    }
+    if (TRACE) {
+      log.d("odkSurvey", "DO: closeResponseStream(" + refId + ", " + streamId + ")");
+    }
+    mActivity.closeResponseStream(streamId);
+  }
+
+  // operation names accepted by transition()
+  private static final String OP = "op";
+  private static final String OP_PUSH = "pushSectionScreenState";
+  private static final String OP_SET = "setSectionScreenState";
+  private static final String OP_CLEAR = "clearSectionScreenState";
+  private static final String OP_POP_HISTORY = "popScreenHistory";
+  private static final String OP_POP_SECTION = "popSectionStack";
+
+  /**
+   * Apply a list of section screen state operations and return the resulting state, so that
+   * a screen navigation needs one bridge crossing instead of several.
+   *
+   * The operations are a JSON array of objects, each with an "op" of pushSectionScreenState,
+   * setSectionScreenState (with a string "screenPath" and a string or null "state"),
+   * clearSectionScreenState, popScreenHistory or popSectionStack. All operations are validated
+   * before any is applied; if one is malformed, none are applied and null is returned.
+   *
+   * @param refId
+   * @param operationsJSON
+   * @return JSON object with screenPath, controllerState, hasScreenHistory, hasSectionStack
+   * and popResults (the screenPath returned by each pop operation, in order), or null
+   */
+  public String transition(String refId, String operationsJSON) {
+    if (!isCurrentRefId(refId)) {
+      log.w("odkSurvey", "IGNORED: transition(" + refId + ", " + operationsJSON + ")");
+      BridgeMetrics.recordIgnored("transition");
+      return null;
+    }
+    if (TRACE) {
+      log.d("odkSurvey", "DO: transition(" + refId + ", " + operationsJSON + ")");
+    }
+
+    List<?> operations;
+    try {
+      operations = ODKFileUtils.mapper.readValue(operationsJSON, List.class);
+    } catch (Exception e) {
+      log.e("odkSurvey", "transition: unparsable operations " + e.toString());
+      return null;
+    }
+    if (operations == null) {
+      operations = new ArrayList<Object>();
+    }
+    for (Object operation : operations) {
+      String op = (operation instanceof Map) ? String.valueOf(((Map<?, ?>) operation).get(OP)) :
+          null;
+      if (!OP_PUSH.equals(op) && !OP_SET.equals(op) && !OP_CLEAR.equals(op) &&
+          !OP_POP_HISTORY.equals(op) && !OP_POP_SECTION.equals(op)) {
+        log.e("odkSurvey", "transition: unrecognized operation " + operation);
+        return null;
+      }
+      if (OP_SET.equals(op)) {
+        Map<?, ?> set = (Map<?, ?>) operation;
+        if (!(set.get("screenPath") instanceof String)) {
+          log.e("odkSurvey", "transition: setSectionScreenState without a screenPath");
+          return null;
+        }
+        // the state is stored verbatim; a JSON object or array here would be stored as
+        // Java's toString() of the parsed value, not as JSON
+        Object state = set.get("state");
+        if (state != null && !(state instanceof String)) {
+          log.e("odkSurvey", "transition: setSectionScreenState with a non-string state");
+          return null;
+        }
+      }
+    }
+
+    ArrayList<String> popResults = new ArrayList<String>();
+    for (Object entry : operations) {
+      Map<?, ?> operation = (Map<?, ?>) entry;
+      String op = (String) operation.get(OP);
+      if (OP_PUSH.equals(op)) {
+        mActivity.pushSectionScreenState();
+      } else if (OP_SET.equals(op)) {
+        mActivity.setSectionScreenState((String) operation.get("screenPath"),
+            (String) operation.get("state"));
+      } else if (OP_CLEAR.equals(op)) {
+        mActivity.clearSectionScreenState();
+      } else if (OP_POP_HISTORY.equals(op)) {
+        popResults.add(mActivity.popScreenHistory());
+      } else {
+        popResults.add(mActivity.popSectionStack());
+      }
+    }
+
+    HashMap<String, Object> result = new HashMap<String, Object>();
+    result.put("screenPath", mActivity.getScreenPath());
+    result.put("controllerState", mActivity.getControllerState());
+    result.put("hasScreenHistory", mActivity.hasScreenHistory());
+    result.put("hasSectionStack", mActivity.hasSectionStack());
+    result.put("popResults", popResults);
+    try {
+      return ODKFileUtils.mapper.writeValueAsString(result);
+    } catch (Exception e) {
+      log.printStackTrace(e);
+      return null;
+    }
+  }
+
   public void pushSectionScreenState(String refId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: pushSectionScreenState(" + refId + ")");
+      BridgeMetrics.recordIgnored("pushSectionScreenState");
       return;
     }
-    log.d("odkSurvey", "DO: pushSectionScreenState(" + refId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: pushSectionScreenState(" + refId + ")");
+    }
     mActivity.pushSectionScreenState();
   }
 
   public void setSectionScreenState(String refId, String screenPath, String state) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: setSectionScreenState(" + refId + ", " + screenPath + ", " + state
           + ")");
+      BridgeMetrics.recordIgnored("setSectionScreenState");
       return;
     }
-    log.d("odkSurvey", "DO: setSectionScreenState(" + refId + ", " + screenPath + ", " + state + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: setSectionScreenState(" + refId + ", " + screenPath
+          + ", " + state + ")");
+    }
     mActivity.setSectionScreenState(screenPath, state);
   }
 
   public void clearSectionScreenState(String refId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: clearSectionScreenState(" + refId + ")");
+      BridgeMetrics.recordIgnored("clearSectionScreenState");
       return;
     }
-    log.d("odkSurvey", "DO: clearSectionScreenState(" + refId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: clearSectionScreenState(" + refId + ")");
+    }
     mActivity.clearSectionScreenState();
   }
 
   public String getControllerState(String refId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: getControllerState(" + refId + ")");
+      BridgeMetrics.recordIgnored("getControllerState");
       return null;
     }
-    log.d("odkSurvey", "DO: getControllerState(" + refId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: getControllerState(" + refId + ")");
+    }
     return mActivity.getControllerState();
   }
 
   public String getScreenPath(String refId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: getScreenPath(" + refId + ")");
+      BridgeMetrics.recordIgnored("getScreenPath");
       return null;
     }
-    log.d("odkSurvey", "DO: getScreenPath(" + refId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: getScreenPath(" + refId + ")");
+    }
     return mActivity.getScreenPath();
   }
 
   public boolean hasScreenHistory(String refId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: hasScreenHistory(" + refId + ")");
+      BridgeMetrics.recordIgnored("hasScreenHistory");
       return false;
     }
-    log.d("odkSurvey", "DO: hasScreenHistory(" + refId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: hasScreenHistory(" + refId + ")");
+    }
     return mActivity.hasScreenHistory();
   }
 
   public String popScreenHistory(String refId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: popScreenHistory(" + refId + ")");
+      BridgeMetrics.recordIgnored("popScreenHistory");
       return null;
     }
-    log.d("odkSurvey", "DO: popScreenHistory(" + refId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: popScreenHistory(" + refId + ")");
+    }
     return mActivity.popScreenHistory();
   }
 
   public boolean hasSectionStack(String refId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: hasSectionStack(" + refId + ")");
+      BridgeMetrics.recordIgnored("hasSectionStack");
       return false;
     }
-    log.d("odkSurvey", "DO: hasSectionStack(" + refId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: hasSectionStack(" + refId + ")");
+    }
     return mActivity.hasSectionStack();
   }
 
   public String popSectionStack(String refId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: popSectionStack(" + refId + ")");
+      BridgeMetrics.recordIgnored("popSectionStack");
       return null;
     }
-    log.d("odkSurvey", "DO: popSectionStack(" + refId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: popSectionStack(" + refId + ")");
+    }
     return mActivity.popSectionStack();
   }
 
   public void ignoreAllChangesCompleted(String refId, String instanceId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: ignoreAllChangesCompleted(" + refId + ", " + instanceId + ")");
+      BridgeMetrics.recordIgnored("ignoreAllChangesCompleted");
       return;
     }
-    log.d("odkSurvey", "DO: ignoreAllChangesCompleted(" + refId + ", " + instanceId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: ignoreAllChangesCompleted(" + refId + ", "
+          + instanceId + ")");
+    }
     mActivity.ignoreAllChangesCompleted(instanceId);
   }
 
   public void ignoreAllChangesFailed(String refId, String instanceId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: ignoreAllChangesFailed(" + refId + ", " + instanceId + ")");
+      BridgeMetrics.recordIgnored("ignoreAllChangesFailed");
       return;
     }
-    log.d("odkSurvey", "DO: ignoreAllChangesFailed(" + refId + ", " + instanceId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: ignoreAllChangesFailed(" + refId + ", " + instanceId + ")");
+    }
     mActivity.ignoreAllChangesFailed(instanceId);
   }
 
   public void saveAllChangesCompleted(String refId, String instanceId, boolean asComplete) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: saveAllChangesCompleted(" + refId + ", " + instanceId + ", "
           + asComplete + ")");
+      BridgeMetrics.recordIgnored("saveAllChangesCompleted");
       return;
     }
     // go through the FC because there are additional keys that should be
     // set here...
-    log.d("odkSurvey", "DO: saveAllChangesCompleted(" + refId + ", " + instanceId + ", " + asComplete
-        + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: saveAllChangesCompleted(" + refId + ", " + instanceId
+          + ", " + asComplete + ")");
+    }
     mActivity.saveAllChangesCompleted(instanceId, asComplete);
   }
 
   public void saveAllChangesFailed(String refId, String instanceId) {
-    if (!mActivity.getRefId().equals(refId)) {
+    if (!isCurrentRefId(refId)) {
       log.w("odkSurvey", "IGNORED: saveAllChangesFailed(" + refId + ", " + instanceId + ")");
+      BridgeMetrics.recordIgnored("saveAllChangesFailed");
       return;
     }
-    log.d("odkSurvey", "DO: saveAllChangesFailed(" + refId + ", " + instanceId + ")");
+    if (TRACE) {
+      log.d("odkSurvey", "DO: saveAllChangesFailed(" + refId + ", " + instanceId + ")");
+    }
     mActivity.saveAllChangesFailed(instanceId);
   }
 }
\ No newline at end of file
@@ -27,13 +27,37 @@ public class OdkSurveyStateManagementIf {
   public static final String t = "OdkSurveyStateManagementIf";
 
   private WeakReference<OdkSurveyStateManagement> weakSurvey;
+  // for BridgeMetrics; fixed for the life of the activity
+  private final String appName;
 
   OdkSurveyStateManagementIf(OdkSurveyStateManagement odkData) {
     weakSurvey = new WeakReference<OdkSurveyStateManagement>(odkData);
+    appName = odkData.getAppName();
   }
 
-  private boolean isInactive() {
-    return (weakSurvey.get() == null) || (weakSurvey.get().isInactive());
+  private interface BridgeCall<T> {
+    T run(OdkSurveyStateManagement survey);
+  }
+
+  /**
+   * Run a bridge call against the state manager, recording its latency in BridgeMetrics.
+   *
+   * @param method   the bridge method name, for BridgeMetrics
+   * @param inactive returned if the web view is gone or inactive
+   * @param call
+   * @return the result of the call
+   */
+  private <T> T call(String method, T inactive, BridgeCall<T> call) {
+    OdkSurveyStateManagement survey = weakSurvey.get();
+    if (survey == null || survey.isInactive()) {
+      return inactive;
+    }
+    long start = BridgeMetrics.start();
+    try {
+      return call.run(survey);
+    } finally {
+      BridgeMetrics.record(appName, method, start);
+    }
   }
 
   /**
@@ -44,8 +68,13 @@ public class OdkSurveyStateManagementIf {
    */
   @android.webkit.JavascriptInterface
   public void clearAuxillaryHash() {
-    if (isInactive()) return;
-    weakSurvey.get().clearAuxillaryHash();
+    call("clearAuxillaryHash", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.clearAuxillaryHash();
+        return null;
+      }
+    });
   }
 
   /**
@@ -55,9 +84,14 @@ public class OdkSurveyStateManagementIf {
    * @param refId
    */
   @android.webkit.JavascriptInterface
-  public void clearInstanceId(String refId) {
-    if (isInactive()) return;
-    weakSurvey.get().clearInstanceId(refId);
+  public void clearInstanceId(final String refId) {
+    call("clearInstanceId", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.clearInstanceId(refId);
+        return null;
+      }
+    });
   }
 
   /**
@@ -68,9 +102,14 @@ public class OdkSurveyStateManagementIf {
    * @param instanceId
    */
   @android.webkit.JavascriptInterface
-  public void setInstanceId(String refId, String instanceId) {
-    if (isInactive()) return;
-    weakSurvey.get().setInstanceId(refId, instanceId);
+  public void setInstanceId(final String refId, final String instanceId) {
+    call("setInstanceId", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.setInstanceId(refId, instanceId);
+        return null;
+      }
+    });
   }
 
   /**
@@ -81,19 +120,132 @@ public class OdkSurveyStateManagementIf {
    * @return
    */
   @android.webkit.JavascriptInterface
-  public String getInstanceId(String refId) {
-    if (isInactive()) return null;
-    return weakSurvey.get().getInstanceId(refId);
+  public String getInstanceId(final String refId) {
+    return call("getInstanceId", null, new BridgeCall<String>() {
+      @Override
+      public String run(OdkSurveyStateManagement survey) {
+        return survey.getInstanceId(refId);
+      }
+    });
+  }
+
+  /**
+   * Fetch the queued odkData responses as one JSON array, oldest first, so that
+   * several responses cost a single bridge crossing. Responses are removed from
+   * the queue used by odkData's getResponseJSON().
+   * Returns null if the refId does not match.
+   *
+   * @param refId
+   * @param maxBytes approximate size budget; zero or less uses the default.
+   *                 At least one response is returned if any are queued.
+   * @return
+   */
+  @android.webkit.JavascriptInterface
+  public String getResponseJSONBatch(final String refId, final int maxBytes) {
+    return call("getResponseJSONBatch", null, new BridgeCall<String>() {
+      @Override
+      public String run(OdkSurveyStateManagement survey) {
+        return survey.getResponseJSONBatch(refId, maxBytes);
+      }
+    });
+  }
+
+  /**
+   * Take the oldest queued odkData response for reading in chunks, so that a very
+   * large response does not cross the bridge as one string. Returns a JSON
+   * descriptor {"streamId":n,"length":chars,"chunkCount":k}, or null if no
+   * response is queued or the refId does not match. Returns {"busy":true} while
+   * too many streams are open; the response stays queued and responseAvailable()
+   * is signalled again once a stream is finished or closed. Chunks never split a
+   * surrogate pair, so they may be one character shorter than requested.
+   *
+   * @param refId
+   * @param chunkChars characters per chunk; zero or less uses the default
+   * @return
+   */
+  @android.webkit.JavascriptInterface
+  public String openResponseStream(final String refId, final int chunkChars) {
+    return call("openResponseStream", null, new BridgeCall<String>() {
+      @Override
+      public String run(OdkSurveyStateManagement survey) {
+        return survey.openResponseStream(refId, chunkChars);
+      }
+    });
   }
 
   /**
+   * Read one chunk of a response opened with openResponseStream().
+   * Reading the last chunk releases the stream.
    *
    * @param refId
+   * @param streamId
+   * @param chunkIndex zero-based
+   * @return the chunk, or null if the stream or index is invalid
    */
   @android.webkit.JavascriptInterface
-  public void pushSectionScreenState(String refId) {
-    if (isInactive()) return;
-    weakSurvey.get().pushSectionScreenState(refId);
+  public String getResponseChunk(final String refId, final int streamId, final int chunkIndex) {
+    return call("getResponseChunk", null, new BridgeCall<String>() {
+      @Override
+      public String run(OdkSurveyStateManagement survey) {
+        return survey.getResponseChunk(refId, streamId, chunkIndex);
+      }
+    });
+  }
+
+  /**
+   * Release a response stream without reading the remaining chunks.
+   *
+   * @param refId
+   * @param streamId
+   */
+  @android.webkit.JavascriptInterface
+  public void closeResponseStream(final String refId, final int streamId) {
+    call("closeResponseStream", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.closeResponseStream(refId, streamId);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Apply several section screen state operations with one bridge crossing and
+   * return the resulting state.
+   *
+   * @param refId
+   * @param operationsJSON JSON array of {"op": name, ...} objects. The names are
+   *                       pushSectionScreenState, setSectionScreenState (with
+   *                       a string screenPath and a string or null state),
+   *                       clearSectionScreenState,
+   *                       popScreenHistory and popSectionStack.
+   * @return JSON object with screenPath, controllerState, hasScreenHistory,
+   * hasSectionStack and popResults; null if the refId does not match or an
+   * operation is malformed (in which case nothing is applied).
+   */
+  @android.webkit.JavascriptInterface
+  public String transition(final String refId, final String operationsJSON) {
+    return call("transition", null, new BridgeCall<String>() {
+      @Override
+      public String run(OdkSurveyStateManagement survey) {
+        return survey.transition(refId, operationsJSON);
+      }
+    });
+  }
+
+  /**
+   *
+   * @param refId
+   */
+  @android.webkit.JavascriptInterface
+  public void pushSectionScreenState(final String refId) {
+    call("pushSectionScreenState", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.pushSectionScreenState(refId);
+        return null;
+      }
+    });
   }
 
   /**
@@ -103,9 +255,15 @@ public class OdkSurveyStateManagementIf {
    * @param state
    */
   @android.webkit.JavascriptInterface
-  public void setSectionScreenState(String refId, String screenPath, String state) {
-    if (isInactive()) return;
-    weakSurvey.get().setSectionScreenState(refId, screenPath, state);
+  public void setSectionScreenState(final String refId, final String screenPath,
+      final String state) {
+    call("setSectionScreenState", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.setSectionScreenState(refId, screenPath, state);
+        return null;
+      }
+    });
   }
 
   /**
@@ -113,68 +271,118 @@ public class OdkSurveyStateManagementIf {
    * @param refId
    */
   @android.webkit.JavascriptInterface
-  public void clearSectionScreenState(String refId) {
-    if (isInactive()) return;
-    weakSurvey.get().clearSectionScreenState(refId);
+  public void clearSectionScreenState(final String refId) {
+    call("clearSectionScreenState", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.clearSectionScreenState(refId);
+        return null;
+      }
+    });
   }
 
   @android.webkit.JavascriptInterface
-  public String getControllerState(String refId) {
-    if (isInactive()) return null;
-    return weakSurvey.get().getControllerState(refId);
+  public String getControllerState(final String refId) {
+    return call("getControllerState", null, new BridgeCall<String>() {
+      @Override
+      public String run(OdkSurveyStateManagement survey) {
+        return survey.getControllerState(refId);
+      }
+    });
   }
 
   @android.webkit.JavascriptInterface
-  public String getScreenPath(String refId) {
-    if (isInactive()) return null;
-    return weakSurvey.get().getScreenPath(refId);
+  public String getScreenPath(final String refId) {
+    return call("getScreenPath", null, new BridgeCall<String>() {
+      @Override
+      public String run(OdkSurveyStateManagement survey) {
+        return survey.getScreenPath(refId);
+      }
+    });
   }
 
   @android.webkit.JavascriptInterface
-  public boolean hasScreenHistory(String refId) {
-    if (isInactive()) return false;
-    return weakSurvey.get().hasScreenHistory(refId);
+  public boolean hasScreenHistory(final String refId) {
+    return call("hasScreenHistory", false, new BridgeCall<Boolean>() {
+      @Override
+      public Boolean run(OdkSurveyStateManagement survey) {
+        return survey.hasScreenHistory(refId);
+      }
+    });
   }
 
   @android.webkit.JavascriptInterface
-  public String popScreenHistory(String refId) {
-    if (isInactive()) return null;
-    return weakSurvey.get().popScreenHistory(refId);
+  public String popScreenHistory(final String refId) {
+    return call("popScreenHistory", null, new BridgeCall<String>() {
+      @Override
+      public String run(OdkSurveyStateManagement survey) {
+        return survey.popScreenHistory(refId);
+      }
+    });
   }
 
   @android.webkit.JavascriptInterface
-  public boolean hasSectionStack(String refId) {
-    if (isInactive()) return false;
-    return weakSurvey.get().hasSectionStack(refId);
+  public boolean hasSectionStack(final String refId) {
+    return call("hasSectionStack", false, new BridgeCall<Boolean>() {
+      @Override
+      public Boolean run(OdkSurveyStateManagement survey) {
+        return survey.hasSectionStack(refId);
+      }
+    });
   }
 
   @android.webkit.JavascriptInterface
-  public String popSectionStack(String refId) {
-    if (isInactive()) return null;
-    return weakSurvey.get().popSectionStack(refId);
+  public String popSectionStack(final String refId) {
+    return call("popSectionStack", null, new BridgeCall<String>() {
+      @Override
+      public String run(OdkSurveyStateManagement survey) {
+        return survey.popSectionStack(refId);
+      }
+    });
   }
 
   @android.webkit.JavascriptInterface
-  public void ignoreAllChangesCompleted(String refId, String instanceId) {
-    if (isInactive()) return;
-    weakSurvey.get().ignoreAllChangesCompleted(refId, instanceId);
+  public void ignoreAllChangesCompleted(final String refId, final String instanceId) {
+    call("ignoreAllChangesCompleted", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.ignoreAllChangesCompleted(refId, instanceId);
+        return null;
+      }
+    });
   }
 
   @android.webkit.JavascriptInterface
-  public void ignoreAllChangesFailed(String refId, String instanceId) {
-    if (isInactive()) return;
-    weakSurvey.get().ignoreAllChangesFailed(refId, instanceId);
+  public void ignoreAllChangesFailed(final String refId, final String instanceId) {
+    call("ignoreAllChangesFailed", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.ignoreAllChangesFailed(refId, instanceId);
+        return null;
+      }
+    });
   }
 
   @android.webkit.JavascriptInterface
-  public void saveAllChangesCompleted(String refId, String instanceId, boolean asComplete) {
-    if (isInactive()) return;
-    weakSurvey.get().saveAllChangesCompleted(refId, instanceId, asComplete);
+  public void saveAllChangesCompleted(final String refId, final String instanceId,
+      final boolean asComplete) {
+    call("saveAllChangesCompleted", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.saveAllChangesCompleted(refId, instanceId, asComplete);
+        return null;
+      }
+    });
   }
 
   @android.webkit.JavascriptInterface
-  public void saveAllChangesFailed(String refId, String instanceId) {
-    if (isInactive()) return;
-    weakSurvey.get().saveAllChangesFailed(refId, instanceId);
- }
+  public void saveAllChangesFailed(final String refId, final String instanceId) {
+    call("saveAllChangesFailed", null, new BridgeCall<Void>() {
+      @Override
+      public Void run(OdkSurveyStateManagement survey) {
+        survey.saveAllChangesFailed(refId, instanceId);
+        return null;
+      }
+    });
+  }
 }
\ No newline at end of file